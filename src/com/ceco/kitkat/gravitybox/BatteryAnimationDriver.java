@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+import de.robv.android.xposed.XposedBridge;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.PowerManager;
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Drives charging animation of battery views in sync with display frames.
+ * Frames are produced only while animation is requested and the view is attached,
+ * shown and screen is on. Frame rate is capped to configured value.
+ * Host view is expected to forward attach/detach and visibility changes.
+ */
+public class BatteryAnimationDriver implements Choreographer.FrameCallback {
+    private static final String TAG = "GB:BatteryAnimationDriver";
+    private static final boolean DEBUG = false;
+
+    public static final int DEFAULT_FPS = 20;
+
+    public interface Listener {
+        /**
+         * Called before host view gets invalidated.
+         * @param elapsedMillis time since animation was started
+         */
+        void onAnimationFrame(long elapsedMillis);
+    }
+
+    private View mView;
+    private Listener mListener;
+    private Choreographer mChoreographer;
+    private PowerManager mPowerManager;
+    private boolean mRequested;
+    private boolean mRunning;
+    private boolean mAttached;
+    private boolean mScreenOn;
+    private long mFrameIntervalNanos;
+    private long mStartTimeNanos;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    private BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mScreenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+            updateRunning();
+        }
+    };
+
+    public BatteryAnimationDriver(View view, Listener listener) {
+        mView = view;
+        mListener = listener;
+        mChoreographer = Choreographer.getInstance();
+        mPowerManager = (PowerManager) view.getContext().getSystemService(Context.POWER_SERVICE);
+        setMaxFps(DEFAULT_FPS);
+    }
+
+    /**
+     * Sets frame rate cap; 0 disables animation completely
+     */
+    public void setMaxFps(int fps) {
+        mFrameIntervalNanos = fps > 0 ? 1000000000L / fps : 0;
+        updateRunning();
+    }
+
+    /**
+     * Requests or cancels animation e.g. based on charging state
+     */
+    public void setAnimating(boolean animating) {
+        if (mRequested == animating) return;
+        mRequested = animating;
+        if (animating) {
+            mStartTimeNanos = 0;
+        }
+        updateRunning();
+    }
+
+    public void onAttachedToWindow() {
+        if (mAttached) return;
+        mAttached = true;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        mView.getContext().registerReceiver(mScreenReceiver, filter);
+        mScreenOn = mPowerManager.isScreenOn();
+        updateRunning();
+    }
+
+    public void onDetachedFromWindow() {
+        if (!mAttached) return;
+        mAttached = false;
+        mView.getContext().unregisterReceiver(mScreenReceiver);
+        updateRunning();
+    }
+
+    public void onVisibilityChanged() {
+        updateRunning();
+    }
+
+    private void updateRunning() {
+        final boolean shouldRun = mRequested && mAttached && mScreenOn &&
+                mFrameIntervalNanos > 0 && mView.isShown();
+        if (shouldRun == mRunning) return;
+
+        mRunning = shouldRun;
+        if (mRunning) {
+            mChoreographer.postFrameCallback(this);
+        } else {
+            mChoreographer.removeFrameCallback(this);
+        }
+        if (DEBUG) log("Animation running: " + mRunning);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) return;
+
+        if (mStartTimeNanos == 0) {
+            mStartTimeNanos = frameTimeNanos;
+        }
+        mListener.onAnimationFrame((frameTimeNanos - mStartTimeNanos) / 1000000);
+        mView.invalidate();
+
+        // skip vsync pulses not needed to reach the frame rate cap
+        mChoreographer.postFrameCallbackDelayed(this, mFrameIntervalNanos / 1000000);
+    }
+}
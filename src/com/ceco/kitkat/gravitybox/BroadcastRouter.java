@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.robv.android.xposed.XposedBridge;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+
+/**
+ * Routes broadcasts received by a host receiver only to sub-receivers
+ * that declared interest in particular action when registering.
+ * Intent filter of the host receiver is kept in sync with the union of declared actions.
+ * Expected to be used from main thread only.
+ */
+public class BroadcastRouter {
+    private static final String TAG = "GB:BroadcastRouter";
+    private static final boolean DEBUG = false;
+
+    private String mName;
+    private Map<String, List<BroadcastSubReceiver>> mRoutes;
+    private Map<String, ActionStats> mStats;
+    private Context mContext;
+    private BroadcastReceiver mReceiver;
+    private Set<String> mHostActions;
+    private Set<String> mRegisteredActions;
+
+    private static class ActionStats {
+        int count;
+        long totalNanos;
+        long maxNanos;
+    }
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    public BroadcastRouter(String name) {
+        mName = name;
+        mRoutes = new HashMap<String, List<BroadcastSubReceiver>>();
+        mStats = new HashMap<String, ActionStats>();
+        mHostActions = new HashSet<String>();
+    }
+
+    public void register(BroadcastSubReceiver receiver, String... actions) {
+        register(receiver, Arrays.asList(actions));
+    }
+
+    public void register(BroadcastSubReceiver receiver, Collection<String> actions) {
+        if (receiver == null || actions == null) return;
+
+        boolean newActions = false;
+        for (String action : actions) {
+            List<BroadcastSubReceiver> receivers = mRoutes.get(action);
+            if (receivers != null && receivers.contains(receiver)) continue;
+            // copy on write so that receivers can (un)register during dispatch
+            receivers = receivers == null ?
+                    new ArrayList<BroadcastSubReceiver>() : new ArrayList<BroadcastSubReceiver>(receivers);
+            receivers.add(receiver);
+            mRoutes.put(action, receivers);
+            if (mRegisteredActions != null && !mRegisteredActions.contains(action)) {
+                newActions = true;
+            }
+        }
+        if (DEBUG) log(mName + ": registered " + receiver + " for " + actions);
+
+        if (newActions) {
+            registerHostReceiver();
+        }
+    }
+
+    public void unregister(BroadcastSubReceiver receiver) {
+        if (receiver == null) return;
+
+        for (String action : new ArrayList<String>(mRoutes.keySet())) {
+            List<BroadcastSubReceiver> receivers = mRoutes.get(action);
+            if (!receivers.contains(receiver)) continue;
+            if (receivers.size() == 1) {
+                mRoutes.remove(action);
+            } else {
+                receivers = new ArrayList<BroadcastSubReceiver>(receivers);
+                receivers.remove(receiver);
+                mRoutes.put(action, receivers);
+            }
+        }
+        if (DEBUG) log(mName + ": unregistered " + receiver);
+    }
+
+    /**
+     * Registers host receiver with intent filter made of host actions and all actions
+     * declared by sub-receivers. Receiver gets re-registered whenever sub-receiver
+     * declares an action which is not part of the filter yet.
+     */
+    public void attach(Context context, BroadcastReceiver receiver, String... hostActions) {
+        mContext = context;
+        mReceiver = receiver;
+        mHostActions.addAll(Arrays.asList(hostActions));
+        registerHostReceiver();
+    }
+
+    private void registerHostReceiver() {
+        if (mContext == null || mReceiver == null) return;
+
+        if (mRegisteredActions != null) {
+            mContext.unregisterReceiver(mReceiver);
+        }
+        Set<String> actions = new HashSet<String>(mHostActions);
+        actions.addAll(mRoutes.keySet());
+        IntentFilter intentFilter = new IntentFilter();
+        for (String action : actions) {
+            intentFilter.addAction(action);
+        }
+        mContext.registerReceiver(mReceiver, intentFilter);
+        mRegisteredActions = actions;
+        if (DEBUG) log(mName + ": host receiver registered for " + actions);
+    }
+
+    public void dispatch(Context context, Intent intent) {
+        final String action = intent.getAction();
+        if (action == null) return;
+
+        final List<BroadcastSubReceiver> receivers = mRoutes.get(action);
+        if (receivers == null) return;
+
+        final long start = DEBUG ? SystemClock.elapsedRealtimeNanos() : 0;
+        for (BroadcastSubReceiver bsr : receivers) {
+            bsr.onBroadcastReceived(context, intent);
+        }
+
+        // statistics are only collected in debug mode; dispatch happens on host receiver's thread
+        if (DEBUG) {
+            final long duration = SystemClock.elapsedRealtimeNanos() - start;
+            ActionStats stats = mStats.get(action);
+            if (stats == null) {
+                stats = new ActionStats();
+                mStats.put(action, stats);
+            }
+            stats.count++;
+            stats.totalNanos += duration;
+            stats.maxNanos = Math.max(stats.maxNanos, duration);
+            log(mName + ": " + action + " dispatched to " + receivers.size() +
+                    " receivers in " + (duration / 1000) + "us");
+        }
+    }
+
+    /**
+     * Returns per-action dispatch counters and timings collected in debug mode
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder(mName);
+        for (String action : mStats.keySet()) {
+            ActionStats stats = mStats.get(action);
+            sb.append("\n").append(action)
+                .append(": count=").append(stats.count)
+                .append(", avg=").append(stats.totalNanos / stats.count / 1000).append("us")
+                .append(", max=").append(stats.maxNanos / 1000).append("us");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.robv.android.xposed.XposedBridge;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.util.DisplayMetrics;
+
+/**
+ * Keeps custom unknown caller photo decoded in memory so that in-call UI can use it
+ * without touching disk. Photo is decoded in background, downsampled to screen size
+ * and re-decoded only when modification time of the file changes.
+ */
+public class CallerPhotoProvider {
+    private static final String TAG = "GB:CallerPhotoProvider";
+    private static final boolean DEBUG = false;
+
+    public interface PhotoListener {
+        void onPhotoLoaded(Bitmap photo);
+    }
+
+    private Context mContext;
+    private String mPath;
+    private Bitmap mPhoto;
+    private long mPhotoModified;
+    private int mTargetWidth;
+    private int mTargetHeight;
+    private AsyncTask<Void, Void, Void> mLoadTask;
+    private List<PhotoListener> mListeners;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    public CallerPhotoProvider(Context context) {
+        mContext = context;
+        mListeners = new ArrayList<PhotoListener>();
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        mTargetWidth = Math.min(dm.widthPixels, dm.heightPixels);
+        mTargetHeight = Math.max(dm.widthPixels, dm.heightPixels);
+    }
+
+    /**
+     * Returns photo decoded so far or null if there is none (yet).
+     * Never performs disk I/O; use refresh() to revalidate cached photo.
+     */
+    public Bitmap getPhoto() {
+        return mPhoto;
+    }
+
+    /**
+     * Revalidates cached photo in background.
+     * Listener, if any, is notified on UI thread once the (possibly unchanged) photo is available.
+     */
+    public void refresh(PhotoListener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+        if (mLoadTask != null) return;
+
+        mLoadTask = new AsyncTask<Void, Void, Void>() {
+            private Bitmap mNewPhoto;
+            private long mNewModified;
+
+            @Override
+            protected Void doInBackground(Void... args) {
+                try {
+                    if (mPath == null) {
+                        final Context gbContext = mContext.createPackageContext(GravityBox.PACKAGE_NAME, 0);
+                        mPath = gbContext.getFilesDir() + "/caller_photo";
+                    }
+                    File f = new File(mPath);
+                    mNewModified = (f.exists() && f.canRead()) ? f.lastModified() : 0;
+                    if (mNewModified != 0 && mNewModified != mPhotoModified) {
+                        mNewPhoto = decodePhoto(mPath);
+                        if (DEBUG) log("Caller photo decoded: " + mNewPhoto);
+                    }
+                } catch (Throwable t) {
+                    XposedBridge.log(t);
+                }
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void args) {
+                if (mNewModified == 0) {
+                    mPhoto = null;
+                    mPhotoModified = 0;
+                } else if (mNewPhoto != null) {
+                    mPhoto = mNewPhoto;
+                    mPhotoModified = mNewModified;
+                }
+                mLoadTask = null;
+                notifyListeners();
+            }
+        }.execute();
+    }
+
+    private void notifyListeners() {
+        List<PhotoListener> listeners = new ArrayList<PhotoListener>(mListeners);
+        mListeners.clear();
+        for (PhotoListener l : listeners) {
+            l.onPhotoLoaded(mPhoto);
+        }
+    }
+
+    private Bitmap decodePhoto(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = 1;
+        while ((options.outWidth / (sampleSize * 2)) >= mTargetWidth &&
+                (options.outHeight / (sampleSize * 2)) >= mTargetHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(path, options);
+    }
+}
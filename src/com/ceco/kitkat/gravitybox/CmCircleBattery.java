@@ -34,23 +34,33 @@ import android.graphics.RectF;
 import android.os.Handler;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.View;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.ImageView;
 
-public class CmCircleBattery extends ImageView implements IconManagerListener, BatteryStatusListener {
+public class CmCircleBattery extends ImageView implements IconManagerListener, BatteryStatusListener,
+                                                         BatteryAnimationDriver.Listener {
     private static final String TAG = "GB:CircleBattery";
     private static final boolean DEBUG = false;
 
     public enum Style { SOLID, DASHED };
 
+    // level texts prepared upfront so that drawing doesn't allocate
+    private static final String[] LEVEL_TEXT = new String[101];
+    static {
+        for (int i = 0; i < LEVEL_TEXT.length; i++) {
+            LEVEL_TEXT[i] = Integer.toString(i);
+        }
+    }
+
     private Handler mHandler;
+    private BatteryAnimationDriver mAnimationDriver;
 
     // state variables
     private boolean mAttached;      // whether or not attached to a window
     private boolean mIsCharging;    // whether or not device is currently charging
     private int     mLevel;         // current battery level
     private int     mAnimOffset;    // current level of charging animation
-    private boolean mIsAnimating;   // stores charge-animation status to reliably remove callbacks
     private int     mDockLevel;     // current dock battery level
     private boolean mDockIsCharging;// whether or not dock battery is currently charging
     private boolean mIsDocked = false;      // whether or not dock battery is connected
@@ -93,6 +103,7 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
     public void onBatteryStatusChanged(BatteryData batteryData) {
         mLevel = batteryData.level;
         mIsCharging = batteryData.charging;
+        updateChargeAnim();
 
         if (mAttached) {
             LayoutParams l = getLayoutParams();
@@ -119,6 +130,7 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         super(context, attrs, defStyle);
 
         mHandler = new Handler();
+        mAnimationDriver = new BatteryAnimationDriver(this, this);
 
         // initialize and setup all paint variables
         // stroke width is later set in initSizeBasedStuff()
@@ -155,6 +167,10 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         }
     }
 
+    public void setAnimationMaxFps(int fps) {
+        mAnimationDriver.setMaxFps(fps);
+    }
+
     public void setStyle(Style style) {
         switch (style) {
             case SOLID:
@@ -179,6 +195,7 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
             mAttached = true;
             mHandler.postDelayed(mInvalidate, 250);
         }
+        mAnimationDriver.onAttachedToWindow();
     }
 
     @Override
@@ -190,7 +207,21 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
                                 // recalculated on next attach
             mCircleSize = 0;    // makes sure, mCircleSize is reread from icons on
                                 // next attach
+            mHandler.removeCallbacks(mInvalidate);
         }
+        mAnimationDriver.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        mAnimationDriver.onVisibilityChanged();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mAnimationDriver.onVisibilityChanged();
     }
 
     @Override
@@ -224,7 +255,7 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         // always skip percentage when 100, so layout doesnt break
         if (level < 100 && mPercentage) {
             mPaintFont.setColor(usePaint.getColor());
-            canvas.drawText(Integer.toString(level), textX, mTextY, mPaintFont);
+            canvas.drawText(LEVEL_TEXT[Math.max(0, level)], textX, mTextY, mPaintFont);
         }
 
     }
@@ -235,8 +266,6 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
             initSizeBasedStuff();
         }
 
-        updateChargeAnim();
-
         if (mIsDocked) {
             drawCircle(canvas, mDockLevel, (mDockIsCharging ? mAnimOffset : 0), mTextLeftX, mRectLeft);
             drawCircle(canvas, mLevel, (mIsCharging ? mAnimOffset : 0), mTextRightX, mRectRight);
@@ -246,30 +275,24 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
     }
 
     /***
-     * updates the animation counter
-     * cares for timed callbacks to continue animation cycles
-     * uses mInvalidate for delayed invalidate() callbacks
+     * starts or stops charging animation based on current battery state
+     * frames are produced by mAnimationDriver only while the view can be seen
      */
     private void updateChargeAnim() {
-        if (!(mIsCharging || mDockIsCharging) || (mLevel >= 97 && mDockLevel >= 97)) {
-            if (mIsAnimating) {
-                mIsAnimating = false;
-                mAnimOffset = 0;
-                mHandler.removeCallbacks(mInvalidate);
-            }
-            return;
-        }
-
-        mIsAnimating = true;
-
-        if (mAnimOffset > 360) {
+        final boolean animate = (mIsCharging || mDockIsCharging) && !(mLevel >= 97 && mDockLevel >= 97);
+        if (!animate) {
             mAnimOffset = 0;
-        } else {
-            mAnimOffset += 3;
         }
+        mAnimationDriver.setAnimating(animate);
+    }
 
-        mHandler.removeCallbacks(mInvalidate);
-        mHandler.postDelayed(mInvalidate, 50);
+    /***
+     * updates the animation counter
+     * rotates by 60 degrees per second regardless of frame rate
+     */
+    @Override
+    public void onAnimationFrame(long elapsedMillis) {
+        mAnimOffset = (int) ((elapsedMillis * 60 / 1000) % 360);
     }
 
     /***
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+/**
+ * Set of pending connectivity operations with at most one entry per operation.
+ * Operations added later are folded into pending ones so that redundant requests collapse,
+ * e.g. two toggles of the same radio cancel each other out and toggle of pending ON becomes OFF.
+ * Operations are applied in order given by their codes, not in order they were added.
+ * Has no dependencies on Android framework.
+ */
+public class ConnectivityBatch {
+    // operation codes in order of application
+    public static final int OP_AIRPLANE_MODE = 0;
+    public static final int OP_MOBILE_DATA = 1;
+    public static final int OP_NETWORK_MODE = 2;
+    public static final int OP_WIFI_AP = 3;
+    public static final int OP_WIFI = 4;
+    public static final int OP_BLUETOOTH = 5;
+    public static final int OP_NFC = 6;
+    public static final int OP_LOCATION_MODE = 7;
+    private static final int OP_COUNT = 8;
+
+    // arguments of on/off operations; mode operations take mode value as argument
+    public static final int ARG_TOGGLE = -1;
+    public static final int ARG_OFF = 0;
+    public static final int ARG_ON = 1;
+
+    private boolean[] mPending = new boolean[OP_COUNT];
+    private int[] mArgs = new int[OP_COUNT];
+
+    public static boolean isModeOp(int op) {
+        return op == OP_NETWORK_MODE || op == OP_LOCATION_MODE;
+    }
+
+    /**
+     * Adds operation folding it into already pending operation of the same kind.
+     * Returns false if operation or its argument is invalid.
+     */
+    public boolean add(int op, int arg) {
+        if (op < 0 || op >= OP_COUNT) return false;
+
+        if (isModeOp(op)) {
+            // last requested mode wins
+            if (arg < 0) return false;
+            mArgs[op] = arg;
+            mPending[op] = true;
+            return true;
+        }
+
+        if (arg != ARG_TOGGLE && arg != ARG_OFF && arg != ARG_ON) return false;
+        if (arg != ARG_TOGGLE || !mPending[op]) {
+            mArgs[op] = arg;
+            mPending[op] = true;
+        } else if (mArgs[op] == ARG_TOGGLE) {
+            // toggled twice - nothing to do
+            mPending[op] = false;
+        } else {
+            mArgs[op] = mArgs[op] == ARG_ON ? ARG_OFF : ARG_ON;
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        for (boolean pending : mPending) {
+            if (pending) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns codes of pending operations in order of application
+     */
+    public int[] getOps() {
+        int count = 0;
+        for (boolean pending : mPending) {
+            if (pending) count++;
+        }
+        int[] ops = new int[count];
+        int index = 0;
+        for (int op = 0; op < OP_COUNT; op++) {
+            if (mPending[op]) {
+                ops[index++] = op;
+            }
+        }
+        return ops;
+    }
+
+    public int getArg(int op) {
+        return mArgs[op];
+    }
+
+    public void clear() {
+        for (int op = 0; op < OP_COUNT; op++) {
+            mPending[op] = false;
+        }
+    }
+}
@@ -15,12 +15,19 @@
 
 package com.ceco.kitkat.gravitybox;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.bluetooth.BluetoothAdapter;
 import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.nfc.NfcAdapter;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.ResultReceiver;
 import android.provider.Settings;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
@@ -43,9 +50,18 @@ public class ConnectivityServiceWrapper {
     public static final String ACTION_TOGGLE_WIFI_AP = "gravitybox.intent.action.TOGGLE_WIFI_AP";
     public static final String ACTION_SET_LOCATION_MODE = "gravitybox.intent.action.SET_LOCATION_MODE";
     public static final String ACTION_TOGGLE_NFC = "gravitybox.intent.action.TOGGLE_NFC";
+    public static final String ACTION_TOGGLE_AIRPLANE_MODE = "gravitybox.intent.action.TOGGLE_AIRPLANE_MODE";
     public static final String EXTRA_LOCATION_MODE = "locationMode";
     public static final String EXTRA_ENABLED = "enabled";
 
+    // Batch of connectivity operations applied in one go; see ConnectivityBatch
+    public static final String ACTION_CONNECTIVITY_BATCH = "gravitybox.intent.action.CONNECTIVITY_BATCH";
+    public static final String EXTRA_BATCH_OPS = "batchOps";
+    public static final String EXTRA_BATCH_ARGS = "batchArgs";
+    public static final String EXTRA_BATCH_RESULT_RECEIVER = "batchResultReceiver";
+    public static final String EXTRA_BATCH_FAILED_OPS = "batchFailedOps";
+    public static final String EXTRA_BATCH_DISPATCHED_OPS = "batchDispatchedOps";
+
     private static final int NFC_STATE_OFF = 1;
     private static final int NFC_STATE_TURNING_ON = 2;
     private static final int NFC_STATE_ON = 3;
@@ -54,6 +70,21 @@ public class ConnectivityServiceWrapper {
     private static Context mContext;
     private static Object mConnectivityService;
     private static WifiManagerWrapper mWifiManager;
+    private static Handler mHandler;
+    private static ConnectivityBatch mPendingBatch = new ConnectivityBatch();
+    private static List<BatchRequest> mPendingRequests = new ArrayList<BatchRequest>();
+    private static boolean mBatchScheduled;
+
+    // operations of single batch intent whose sender waits for result
+    private static class BatchRequest {
+        ResultReceiver resultReceiver;
+        List<Integer> ops = new ArrayList<Integer>();
+        List<Integer> rejectedOps = new ArrayList<Integer>();
+
+        BatchRequest(ResultReceiver receiver) {
+            resultReceiver = receiver;
+        }
+    }
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -64,27 +95,170 @@ public class ConnectivityServiceWrapper {
         public void onReceive(Context context, Intent intent) {
             if (DEBUG) log("Broadcast received: " + intent.toString());
 
+            // single operations go through the same queue as batches so that
+            // redundant requests arriving in quick succession collapse
             if (intent.getAction().equals(ACTION_SET_MOBILE_DATA_ENABLED)) {
                 final boolean enabled = intent.getBooleanExtra(EXTRA_ENABLED, false);
-                setMobileDataEnabled(enabled);
+                enqueue(ConnectivityBatch.OP_MOBILE_DATA,
+                        enabled ? ConnectivityBatch.ARG_ON : ConnectivityBatch.ARG_OFF);
             } else if (intent.getAction().equals(ACTION_TOGGLE_MOBILE_DATA)) {
-                toggleMobileData();
+                enqueue(ConnectivityBatch.OP_MOBILE_DATA, ConnectivityBatch.ARG_TOGGLE);
             } else if (intent.getAction().equals(ACTION_TOGGLE_WIFI)) {
-                toggleWiFi();
+                enqueue(ConnectivityBatch.OP_WIFI, ConnectivityBatch.ARG_TOGGLE);
             } else if (intent.getAction().equals(ACTION_TOGGLE_BLUETOOTH)) {
-                toggleBluetooth();
+                enqueue(ConnectivityBatch.OP_BLUETOOTH, ConnectivityBatch.ARG_TOGGLE);
             } else if (intent.getAction().equals(ACTION_TOGGLE_WIFI_AP)) {
-                toggleWiFiAp();
+                enqueue(ConnectivityBatch.OP_WIFI_AP, ConnectivityBatch.ARG_TOGGLE);
             } else if (intent.getAction().equals(ACTION_SET_LOCATION_MODE) &&
                     intent.hasExtra(EXTRA_LOCATION_MODE)) {
-                setLocationMode(intent.getIntExtra(EXTRA_LOCATION_MODE,
+                enqueue(ConnectivityBatch.OP_LOCATION_MODE, intent.getIntExtra(EXTRA_LOCATION_MODE,
                         Settings.Secure.LOCATION_MODE_BATTERY_SAVING));
             } else if (intent.getAction().equals(ACTION_TOGGLE_NFC)) {
-                toggleNfc();
+                enqueue(ConnectivityBatch.OP_NFC, ConnectivityBatch.ARG_TOGGLE);
+            } else if (intent.getAction().equals(ACTION_TOGGLE_AIRPLANE_MODE)) {
+                enqueue(ConnectivityBatch.OP_AIRPLANE_MODE, ConnectivityBatch.ARG_TOGGLE);
+            } else if (intent.getAction().equals(ACTION_CONNECTIVITY_BATCH)) {
+                enqueueBatch(intent);
+            }
+        }
+    };
+
+    /**
+     * Creates intent carrying batch of operations for ACTION_CONNECTIVITY_BATCH.
+     * Operations are given as parallel arrays of ConnectivityBatch operation codes and arguments.
+     * Result receiver, if any, gets number of failed operations as result code and
+     * EXTRA_BATCH_OPS/EXTRA_BATCH_FAILED_OPS/EXTRA_BATCH_DISPATCHED_OPS in result data
+     * once the batch is applied. All contain only operations of this intent;
+     * operations rejected as invalid are reported as failed.
+     * Network mode is owned by phone process so the request is only handed over to it;
+     * such operations are reported as dispatched and their outcome is unknown.
+     * There is no caller within GravityBox; the action is meant for other apps and automation tools.
+     */
+    public static Intent createBatchIntent(int[] ops, int[] args, ResultReceiver resultReceiver) {
+        Intent intent = new Intent(ACTION_CONNECTIVITY_BATCH);
+        intent.putExtra(EXTRA_BATCH_OPS, ops);
+        intent.putExtra(EXTRA_BATCH_ARGS, args);
+        if (resultReceiver != null) {
+            intent.putExtra(EXTRA_BATCH_RESULT_RECEIVER, resultReceiver);
+        }
+        return intent;
+    }
+
+    private static void enqueue(int op, int arg) {
+        mPendingBatch.add(op, arg);
+        scheduleBatch();
+    }
+
+    private static void enqueueBatch(Intent intent) {
+        final int[] ops = intent.getIntArrayExtra(EXTRA_BATCH_OPS);
+        final int[] args = intent.getIntArrayExtra(EXTRA_BATCH_ARGS);
+        final BatchRequest request = new BatchRequest(
+                (ResultReceiver) intent.getParcelableExtra(EXTRA_BATCH_RESULT_RECEIVER));
+        if (ops != null) {
+            for (int i = 0; i < ops.length; i++) {
+                if (args != null && i < args.length && mPendingBatch.add(ops[i], args[i])) {
+                    if (!request.ops.contains(ops[i])) {
+                        request.ops.add(ops[i]);
+                    }
+                } else {
+                    if (DEBUG) log("Rejected invalid operation " + ops[i]);
+                    request.rejectedOps.add(ops[i]);
+                }
+            }
+        }
+        if (request.resultReceiver != null) {
+            mPendingRequests.add(request);
+        }
+        scheduleBatch();
+    }
+
+    private static void scheduleBatch() {
+        if (mBatchScheduled) return;
+        // broadcasts already queued behind this one get merged into the same batch
+        mBatchScheduled = mHandler.post(mApplyBatchRunnable);
+    }
+
+    private static Runnable mApplyBatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mBatchScheduled = false;
+            final int[] ops = mPendingBatch.getOps();
+            final List<BatchRequest> requests = new ArrayList<BatchRequest>(mPendingRequests);
+            final int[] args = new int[ops.length];
+            for (int i = 0; i < ops.length; i++) {
+                args[i] = mPendingBatch.getArg(ops[i]);
+            }
+            mPendingBatch.clear();
+            mPendingRequests.clear();
+
+            List<Integer> failedOps = new ArrayList<Integer>();
+            for (int i = 0; i < ops.length; i++) {
+                if (DEBUG) log("Applying operation " + ops[i] + "; arg=" + args[i]);
+                if (!applyOperation(ops[i], args[i])) {
+                    failedOps.add(ops[i]);
+                }
+            }
+
+            // each sender learns outcome of its own operations only
+            for (BatchRequest request : requests) {
+                List<Integer> failed = new ArrayList<Integer>(request.rejectedOps);
+                List<Integer> dispatched = new ArrayList<Integer>();
+                for (Integer op : request.ops) {
+                    if (failedOps.contains(op)) {
+                        failed.add(op);
+                    } else if (isDispatchOnlyOp(op)) {
+                        dispatched.add(op);
+                    }
+                }
+                Bundle result = new Bundle();
+                result.putIntArray(EXTRA_BATCH_OPS, toIntArray(request.ops));
+                result.putIntArray(EXTRA_BATCH_FAILED_OPS, toIntArray(failed));
+                result.putIntArray(EXTRA_BATCH_DISPATCHED_OPS, toIntArray(dispatched));
+                request.resultReceiver.send(failed.size(), result);
             }
         }
     };
 
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    // operations handed over to another process whose outcome can't be known here
+    private static boolean isDispatchOnlyOp(int op) {
+        return op == ConnectivityBatch.OP_NETWORK_MODE;
+    }
+
+    private static boolean applyOperation(int op, int arg) {
+        final boolean toggle = arg == ConnectivityBatch.ARG_TOGGLE;
+        final boolean enable = arg == ConnectivityBatch.ARG_ON;
+        switch (op) {
+            case ConnectivityBatch.OP_AIRPLANE_MODE:
+                return setAirplaneMode(toggle, enable);
+            case ConnectivityBatch.OP_MOBILE_DATA:
+                return toggle ? toggleMobileData() : setMobileDataEnabled(enable);
+            case ConnectivityBatch.OP_NETWORK_MODE:
+                return setNetworkMode(arg);
+            case ConnectivityBatch.OP_WIFI_AP:
+                if (mWifiManager == null) return false;
+                return (toggle || enable != mWifiManager.isWifiApEnabled()) ? toggleWiFiAp() : true;
+            case ConnectivityBatch.OP_WIFI:
+                if (mWifiManager == null) return false;
+                return (toggle || enable != mWifiManager.isWifiEnabled()) ? toggleWiFi() : true;
+            case ConnectivityBatch.OP_BLUETOOTH:
+                return setBluetoothEnabled(toggle, enable);
+            case ConnectivityBatch.OP_NFC:
+                return setNfcEnabled(toggle, enable);
+            case ConnectivityBatch.OP_LOCATION_MODE:
+                return setLocationMode(arg);
+            default:
+                return false;
+        }
+    }
+
     public static void initZygote() {
         try {
             final Class<?> connServiceClass = 
@@ -105,6 +279,7 @@ public class ConnectivityServiceWrapper {
                     if (context != null) {
                         mContext = context;
                         mWifiManager = new WifiManagerWrapper(context);
+                        mHandler = new Handler(context.getMainLooper());
 
                         IntentFilter intentFilter = new IntentFilter();
                         intentFilter.addAction(ACTION_SET_MOBILE_DATA_ENABLED);
@@ -114,6 +289,8 @@ public class ConnectivityServiceWrapper {
                         intentFilter.addAction(ACTION_TOGGLE_WIFI_AP);
                         intentFilter.addAction(ACTION_SET_LOCATION_MODE);
                         intentFilter.addAction(ACTION_TOGGLE_NFC);
+                        intentFilter.addAction(ACTION_TOGGLE_AIRPLANE_MODE);
+                        intentFilter.addAction(ACTION_CONNECTIVITY_BATCH);
                         context.registerReceiver(mBroadcastReceiver, intentFilter);
                     }
                 }
@@ -123,88 +300,120 @@ public class ConnectivityServiceWrapper {
         }
     }
 
-    private static void setMobileDataEnabled(boolean enabled) {
-        if (mConnectivityService == null) return;
+    private static boolean setMobileDataEnabled(boolean enabled) {
+        if (mConnectivityService == null) return false;
         try {
             XposedHelpers.callMethod(mConnectivityService, "setMobileDataEnabled", enabled);
             if (DEBUG) log("setMobileDataEnabled called");
+            return true;
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 
-    private static void toggleMobileData() {
-        if (mConnectivityService == null) return;
+    private static boolean toggleMobileData() {
+        if (mConnectivityService == null) return false;
         try {
             final boolean enabled = 
                     (Boolean) XposedHelpers.callMethod(mConnectivityService, "getMobileDataEnabled");
-            setMobileDataEnabled(!enabled);
+            return setMobileDataEnabled(!enabled);
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 
-    private static void toggleWiFi() {
-        if (mWifiManager == null) return;
+    // returns true once request is dispatched; it doesn't mean network mode was changed
+    private static boolean setNetworkMode(int networkMode) {
+        if (mContext == null) return false;
+        // preferred network type is owned by phone process
+        Intent intent = new Intent(PhoneWrapper.ACTION_CHANGE_NETWORK_TYPE);
+        intent.putExtra(PhoneWrapper.EXTRA_NETWORK_TYPE, networkMode);
+        mContext.sendBroadcast(intent);
+        return true;
+    }
+
+    private static boolean setAirplaneMode(boolean toggle, boolean enable) {
+        if (mContext == null) return false;
+        try {
+            ContentResolver cr = mContext.getContentResolver();
+            final boolean enabled = Settings.Global.getInt(cr, Settings.Global.AIRPLANE_MODE_ON, 0) == 1;
+            final boolean newState = toggle ? !enabled : enable;
+            if (newState == enabled) return true;
+            Settings.Global.putInt(cr, Settings.Global.AIRPLANE_MODE_ON, newState ? 1 : 0);
+            Intent intent = new Intent(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+            intent.putExtra("state", newState);
+            mContext.sendBroadcast(intent);
+            return true;
+        } catch (Throwable t) {
+            XposedBridge.log(t);
+            return false;
+        }
+    }
+
+    private static boolean toggleWiFi() {
+        if (mWifiManager == null) return false;
         try {
             mWifiManager.toggleWifiEnabled();
+            return true;
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 
-    private static void toggleWiFiAp() {
-        if (mWifiManager == null) return;
+    private static boolean toggleWiFiAp() {
+        if (mWifiManager == null) return false;
         try {
             mWifiManager.toggleWifiApEnabled();
+            return true;
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 
-    private static void toggleBluetooth() {
+    private static boolean setBluetoothEnabled(boolean toggle, boolean enable) {
         try {
             BluetoothAdapter btAdapter = BluetoothAdapter.getDefaultAdapter();
-            if (btAdapter.isEnabled()) {
-                btAdapter.disable();
-            } else {
-                btAdapter.enable();
-            }
+            final boolean newState = toggle ? !btAdapter.isEnabled() : enable;
+            if (newState == btAdapter.isEnabled()) return true;
+            return newState ? btAdapter.enable() : btAdapter.disable();
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 
-    private static void setLocationMode(int mode) {
-        if (mContext == null) return;
+    private static boolean setLocationMode(int mode) {
+        if (mContext == null) return false;
         try {
-            Settings.Secure.putInt(mContext.getContentResolver(),
+            return Settings.Secure.putInt(mContext.getContentResolver(),
                     Settings.Secure.LOCATION_MODE, mode);
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 
-    private static void toggleNfc() {
-        if (mContext == null) return;
+    private static boolean setNfcEnabled(boolean toggle, boolean enable) {
+        if (mContext == null) return false;
         try {
             NfcAdapter adapter = (NfcAdapter) XposedHelpers.callStaticMethod(
                     NfcAdapter.class, "getNfcAdapter", mContext);
-            if (adapter != null) {
-                int nfcState = (Integer) XposedHelpers.callMethod(adapter, "getAdapterState");
-                switch (nfcState) {
-                    case NFC_STATE_TURNING_ON:
-                    case NFC_STATE_ON:
-                        XposedHelpers.callMethod(adapter, "disable");
-                        break;
-                    case NFC_STATE_TURNING_OFF:
-                    case NFC_STATE_OFF:
-                        XposedHelpers.callMethod(adapter, "enable");
-                        break;
-                }
-            }
+            if (adapter == null) return false;
+
+            int nfcState = (Integer) XposedHelpers.callMethod(adapter, "getAdapterState");
+            if (nfcState < NFC_STATE_OFF || nfcState > NFC_STATE_TURNING_OFF) return false;
+            final boolean enabled = nfcState == NFC_STATE_TURNING_ON || nfcState == NFC_STATE_ON;
+            final boolean newState = toggle ? !enabled : enable;
+            if (newState == enabled) return true;
+            XposedHelpers.callMethod(adapter, newState ? "enable" : "disable");
+            return true;
         } catch (Throwable t) {
             XposedBridge.log(t);
+            return false;
         }
     }
 }
@@ -19,9 +19,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -104,6 +106,7 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
     public static final String PREF_KEY_BATTERY_PERCENT_TEXT_STYLE = "pref_battery_percent_text_style";
     public static final String PREF_KEY_BATTERY_PERCENT_TEXT_CHARGING = "battery_percent_text_charging";
     public static final String PREF_KEY_BATTERY_PERCENT_TEXT_CHARGING_COLOR = "pref_battery_percent_text_charging_color";
+    public static final String PREF_KEY_BATTERY_CHARGING_ANIM_FPS = "pref_battery_charging_anim_fps";
     public static final int BATTERY_STYLE_STOCK = 1;
     public static final int BATTERY_STYLE_CIRCLE = 2;
     public static final int BATTERY_STYLE_CIRCLE_PERCENT = 3;
@@ -143,6 +146,7 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
 
     public static final String PREF_KEY_RECENTS_CLEAR_ALL = "pref_recents_clear_all2";
     public static final String PREF_KEY_CLEAR_RECENTS_MODE = "pref_clear_recents_mode";
+    public static final String PREF_KEY_CLEAR_RECENTS_PER_TASK_ANIM = "pref_clear_recents_per_task_anim";
     public static final String PREF_KEY_RAMBAR = "pref_rambar";
     public static final String PREF_KEY_RECENTS_CLEAR_MARGIN_TOP = "pref_recent_clear_margin_top";
     public static final String PREF_KEY_RECENTS_CLEAR_MARGIN_BOTTOM = "pref_recent_clear_margin_bottom";
@@ -174,6 +178,7 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
     public static final String PREF_KEY_STATUSBAR_DATA_ACTIVITY_COLOR_SECONDARY = 
             "pref_signal_cluster_data_activity_color_secondary";
     public static final String PREF_KEY_STATUSBAR_SIGNAL_COLOR_MODE = "pref_statusbar_signal_color_mode";
+    public static final String PREF_KEY_STATUSBAR_ICON_PRERENDER = "pref_statusbar_icon_prerender";
     public static final String PREF_KEY_STATUSBAR_CENTER_CLOCK = "pref_statusbar_center_clock";
     public static final String PREF_KEY_STATUSBAR_CLOCK_DOW = "pref_statusbar_clock_dow2";
     public static final String PREF_KEY_STATUSBAR_CLOCK_DATE = "pref_statusbar_clock_date2";
@@ -502,6 +507,7 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
 
     public static final String ACTION_PREF_BATTERY_STYLE_CHANGED = "gravitybox.intent.action.BATTERY_STYLE_CHANGED";
     public static final String EXTRA_BATTERY_STYLE = "batteryStyle";
+    public static final String EXTRA_BATTERY_CHARGING_ANIM_FPS = "batteryChargingAnimFps";
     public static final String ACTION_PREF_BATTERY_PERCENT_TEXT_CHANGED =
             "gravitybox.intent.action.BATTERY_PERCENT_TEXT_CHANGED";
     public static final String EXTRA_BATTERY_PERCENT_TEXT = "batteryPercentText";
@@ -726,6 +732,9 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
     public static final String PREF_KEY_SMART_RADIO_IGNORE_LOCKED = "pref_smart_radio_ignore_locked";
     public static final String PREF_KEY_SMART_RADIO_MODE_CHANGE_DELAY = "pref_smart_radio_mode_change_delay";
     public static final String PREF_KEY_SMART_RADIO_MDA_IGNORE = "pref_smart_radio_mda_ignore";
+    public static final String PREF_KEY_SMART_RADIO_HYSTERESIS = "pref_smart_radio_hysteresis";
+    public static final String PREF_KEY_SMART_RADIO_MIN_DWELL = "pref_smart_radio_min_dwell";
+    public static final String PREF_KEY_SMART_RADIO_TRAFFIC_THRESHOLD = "pref_smart_radio_traffic_threshold";
     public static final String ACTION_PREF_SMART_RADIO_CHANGED = "gravitybox.intent.action.SMART_RADIO_CHANGED";
     public static final String EXTRA_SR_NORMAL_MODE = "smartRadioNormalMode";
     public static final String EXTRA_SR_POWER_SAVING_MODE = "smartRadioPowerSavingMode";
@@ -734,6 +743,9 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
     public static final String EXTRA_SR_IGNORE_LOCKED = "smartRadioIgnoreLocked";
     public static final String EXTRA_SR_MODE_CHANGE_DELAY = "smartRadioModeChangeDelay";
     public static final String EXTRA_SR_MDA_IGNORE = "smartRadioMdaIgnore";
+    public static final String EXTRA_SR_HYSTERESIS = "smartRadioHysteresis";
+    public static final String EXTRA_SR_MIN_DWELL = "smartRadioMinDwell";
+    public static final String EXTRA_SR_TRAFFIC_THRESHOLD = "smartRadioTrafficThreshold";
 
     public static final String PREF_KEY_IME_FULLSCREEN_DISABLE = "pref_ime_fullscreen_disable";
     public static final String PREF_KEY_TORCH_AUTO_OFF = "pref_torch_auto_off";
@@ -807,7 +819,8 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
             PREF_KEY_SIGNAL_CLUSTER_HPLUS,
             PREF_KEY_SIGNAL_CLUSTER_LTE_STYLE,
             PREF_KEY_FORCE_LTR_DIRECTION,
-            PREF_KEY_QS_BATTERY_EXTENDED
+            PREF_KEY_QS_BATTERY_EXTENDED,
+            PREF_KEY_STATUSBAR_ICON_PRERENDER
     ));
 
     private static final class SystemProperties {
@@ -2202,6 +2215,10 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
                 intent.setAction(ACTION_PREF_BATTERY_PERCENT_TEXT_STYLE_CHANGED);
                 intent.putExtra(EXTRA_BATTERY_PERCENT_TEXT_CHARGING_COLOR,
                         prefs.getInt(PREF_KEY_BATTERY_PERCENT_TEXT_CHARGING_COLOR, Color.GREEN));
+            } else if (key.equals(PREF_KEY_BATTERY_CHARGING_ANIM_FPS)) {
+                intent.setAction(ACTION_PREF_BATTERY_STYLE_CHANGED);
+                intent.putExtra(EXTRA_BATTERY_CHARGING_ANIM_FPS, Integer.valueOf(
+                        prefs.getString(PREF_KEY_BATTERY_CHARGING_ANIM_FPS, "20")));
             } else if (key.equals(PREF_KEY_QUICK_SETTINGS)) {
                 intent.setAction(ACTION_PREF_QUICKSETTINGS_CHANGED);
                 intent.putExtra(EXTRA_QS_PREFS, TileOrderActivity.updateTileList(prefs));
@@ -2805,6 +2822,18 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
                 intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
                 intent.putExtra(EXTRA_SR_MDA_IGNORE,
                         prefs.getBoolean(PREF_KEY_SMART_RADIO_MDA_IGNORE, false));
+            } else if (key.equals(PREF_KEY_SMART_RADIO_HYSTERESIS)) {
+                intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
+                intent.putExtra(EXTRA_SR_HYSTERESIS,
+                        prefs.getInt(PREF_KEY_SMART_RADIO_HYSTERESIS, 0));
+            } else if (key.equals(PREF_KEY_SMART_RADIO_MIN_DWELL)) {
+                intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
+                intent.putExtra(EXTRA_SR_MIN_DWELL,
+                        prefs.getInt(PREF_KEY_SMART_RADIO_MIN_DWELL, 0));
+            } else if (key.equals(PREF_KEY_SMART_RADIO_TRAFFIC_THRESHOLD)) {
+                intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
+                intent.putExtra(EXTRA_SR_TRAFFIC_THRESHOLD,
+                        prefs.getInt(PREF_KEY_SMART_RADIO_TRAFFIC_THRESHOLD, 0));
             } else if (key.equals(PREF_KEY_LOCKSCREEN_BACKGROUND)) {
                 intent.setAction(ACTION_PREF_LOCKSCREEN_BG_CHANGED);
                 intent.putExtra(EXTRA_LOCKSCREEN_BG,
@@ -2975,43 +3004,31 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
                 mDialog = builder.create();
                 mDialog.show();
             } else if (PREF_KEY_SETTINGS_BACKUP.equals(pref.getKey())) {
-                SettingsManager.getInstance(getActivity()).backupSettings();
+                SettingsManager.getInstance(getActivity()).backupSettings(null);
             } else if (PREF_KEY_SETTINGS_RESTORE.equals(pref.getKey())) {
                 final SettingsManager sm = SettingsManager.getInstance(getActivity());
-                if (sm.isBackupAvailable()) {
+                final String[] snapshots = sm.getSnapshotNames();
+                if (snapshots.length > 1) {
+                    String[] items = new String[snapshots.length];
+                    DateFormat df = DateFormat.getDateTimeInstance();
+                    for (int i = 0; i < snapshots.length; i++) {
+                        Date date = SettingsManager.getSnapshotDate(snapshots[i]);
+                        items[i] = date == null ? snapshots[i] : df.format(date);
+                    }
                     AlertDialog.Builder builder = new AlertDialog.Builder(getActivity())
-                    .setTitle(R.string.app_name)
-                    .setMessage(R.string.settings_restore_confirm)
-                    .setCancelable(true)
-                    .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    .setTitle(R.string.settings_restore_select_title)
+                    .setItems(items, new DialogInterface.OnClickListener() {
                         @Override
                         public void onClick(DialogInterface dialog, int which) {
                             dialog.dismiss();
-                            if (sm.restoreSettings()) {
-                                AlertDialog.Builder builder = new AlertDialog.Builder(getActivity())
-                                .setTitle(R.string.app_name)
-                                .setMessage(R.string.settings_restore_reboot)
-                                .setCancelable(false)
-                                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
-                                    @Override
-                                    public void onClick(DialogInterface dialog, int which) {
-                                        dialog.dismiss();
-                                        getActivity().finish();
-                                    }
-                                });
-                                mDialog = builder.create();
-                                mDialog.show();
-                            }
+                            confirmSettingsRestore(sm, snapshots[which]);
                         }
                     })
-                    .setNegativeButton(android.R.string.no, new DialogInterface.OnClickListener() {
-                        @Override
-                        public void onClick(DialogInterface dialog, int which) {
-                            dialog.dismiss();
-                        }
-                    });
+                    .setNegativeButton(android.R.string.cancel, null);
                     mDialog = builder.create();
                     mDialog.show();
+                } else if (sm.isBackupAvailable()) {
+                    confirmSettingsRestore(sm, null);
                 } else {
                     Toast.makeText(getActivity(), R.string.settings_restore_no_backup, Toast.LENGTH_SHORT).show();
                 }
@@ -3033,6 +3050,46 @@ public class GravityBoxSettings extends Activity implements GravityBoxResultRece
             return super.onPreferenceTreeClick(prefScreen, pref);
         }
 
+        private void confirmSettingsRestore(final SettingsManager sm, final String snapshotName) {
+            AlertDialog.Builder builder = new AlertDialog.Builder(getActivity())
+            .setTitle(R.string.app_name)
+            .setMessage(R.string.settings_restore_confirm)
+            .setCancelable(true)
+            .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    dialog.dismiss();
+                    sm.restoreSettings(snapshotName, new SettingsManager.OperationListener() {
+                        @Override
+                        public void onOperationCompleted(boolean success) {
+                            if (!success || getActivity() == null) return;
+                            AlertDialog.Builder builder = new AlertDialog.Builder(getActivity())
+                            .setTitle(R.string.app_name)
+                            .setMessage(R.string.settings_restore_reboot)
+                            .setCancelable(false)
+                            .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                                @Override
+                                public void onClick(DialogInterface dialog, int which) {
+                                    dialog.dismiss();
+                                    getActivity().finish();
+                                }
+                            });
+                            mDialog = builder.create();
+                            mDialog.show();
+                        }
+                    });
+                }
+            })
+            .setNegativeButton(android.R.string.no, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    dialog.dismiss();
+                }
+            });
+            mDialog = builder.create();
+            mDialog.show();
+        }
+
         @SuppressWarnings("deprecation")
         private void setCustomLockscreenImage() {
             Intent intent = new Intent(Intent.ACTION_PICK, android.provider.MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.robv.android.xposed.XC_MethodHook;
+import de.robv.android.xposed.XC_MethodHook.MethodHookParam;
+import de.robv.android.xposed.XposedBridge;
+import de.robv.android.xposed.XposedHelpers;
+import de.robv.android.xposed.callbacks.XCallback;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+
+/**
+ * Single hook of PhoneWindowManager.interceptKeyBeforeQueueing feeding key events
+ * through ordered chain of handlers. Chain stops once handler reports event as consumed.
+ * Reflective members of PhoneWindowManager used by handlers are resolved only once.
+ */
+public class KeyInterceptionPipeline {
+    private static final String TAG = "GB:KeyInterceptionPipeline";
+    private static final boolean DEBUG = false;
+
+    private static final String CLASS_PHONE_WINDOW_MANAGER = "com.android.internal.policy.impl.PhoneWindowManager";
+    private static final int STATS_LOG_INTERVAL = 100;
+
+    // handler order
+    public static final int ORDER_HWKEYS = 100;
+    public static final int ORDER_TORCH = 200;
+    public static final int ORDER_CUSTOM_KEY = 300;
+    public static final int ORDER_VOLUME_SKIP_TRACK = 400;
+
+    public interface KeyHandler {
+        /**
+         * @return true if event was consumed (result was set) and chain should stop
+         */
+        boolean onInterceptKeyBeforeQueueing(KeyContext ctx) throws Throwable;
+    }
+
+    /**
+     * Key event being processed along with lazily evaluated PhoneWindowManager state
+     * which is evaluated at most once per event no matter how many handlers ask for it
+     */
+    public static class KeyContext {
+        public final MethodHookParam param;
+        public final KeyEvent event;
+        public final int keyCode;
+        public final boolean down;
+        public final boolean isScreenOn;
+        private Boolean mKeyguardOn;
+        private Boolean mMusicActive;
+        private Handler mHandler;
+
+        private KeyContext(MethodHookParam param) {
+            this.param = param;
+            event = (KeyEvent) param.args[0];
+            keyCode = event.getKeyCode();
+            down = event.getAction() == KeyEvent.ACTION_DOWN;
+            isScreenOn = (Boolean) param.args[2];
+        }
+
+        public boolean isKeyguardOn() throws Throwable {
+            if (mKeyguardOn == null) {
+                mKeyguardOn = (Boolean) mMethodKeyguardOn.invoke(param.thisObject);
+            }
+            return mKeyguardOn;
+        }
+
+        public boolean isMusicActive() throws Throwable {
+            if (mMusicActive == null) {
+                mMusicActive = (Boolean) mMethodIsMusicActive.invoke(param.thisObject);
+            }
+            return mMusicActive;
+        }
+
+        public Handler getHandler() throws Throwable {
+            if (mHandler == null) {
+                mHandler = (Handler) mFieldHandler.get(param.thisObject);
+            }
+            return mHandler;
+        }
+
+        public void consume() {
+            param.setResult(0);
+        }
+    }
+
+    private static class HandlerEntry {
+        String name;
+        int order;
+        KeyHandler handler;
+        int count;
+        long totalNanos;
+        long maxNanos;
+    }
+
+    private static List<HandlerEntry> mHandlers = new ArrayList<HandlerEntry>();
+    private static boolean mHooked;
+    private static int mEventCount;
+    private static Method mMethodKeyguardOn;
+    private static Method mMethodIsMusicActive;
+    private static Field mFieldHandler;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    /**
+     * Adds handler to the chain and installs pipeline hook if not done yet.
+     * Handlers are invoked in ascending order regardless of registration order.
+     */
+    public static synchronized void addHandler(String name, int order, KeyHandler handler) {
+        if (!mHooked) {
+            hook();
+        }
+
+        HandlerEntry entry = new HandlerEntry();
+        entry.name = name;
+        entry.order = order;
+        entry.handler = handler;
+
+        // copy on write so that dispatch doesn't need to lock
+        List<HandlerEntry> handlers = new ArrayList<HandlerEntry>(mHandlers);
+        int index = 0;
+        while (index < handlers.size() && handlers.get(index).order <= order) {
+            index++;
+        }
+        handlers.add(index, entry);
+        mHandlers = handlers;
+        if (DEBUG) log("Handler added: " + name + "; order=" + order);
+    }
+
+    private static void hook() {
+        final Class<?> classPhoneWindowManager = XposedHelpers.findClass(CLASS_PHONE_WINDOW_MANAGER, null);
+        mMethodKeyguardOn = XposedHelpers.findMethodExact(classPhoneWindowManager, "keyguardOn");
+        mMethodIsMusicActive = XposedHelpers.findMethodExact(classPhoneWindowManager, "isMusicActive");
+        mFieldHandler = XposedHelpers.findField(classPhoneWindowManager, "mHandler");
+
+        XposedHelpers.findAndHookMethod(classPhoneWindowManager, "interceptKeyBeforeQueueing",
+                KeyEvent.class, int.class, boolean.class, new XC_MethodHook(XCallback.PRIORITY_HIGHEST) {
+            @Override
+            protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
+                final KeyContext ctx = new KeyContext(param);
+                if (DEBUG) log("interceptKeyBeforeQueueing: keyCode=" + ctx.keyCode +
+                        "; action=" + ctx.event.getAction() + "; repeatCount=" + ctx.event.getRepeatCount());
+
+                for (HandlerEntry entry : mHandlers) {
+                    final long start = DEBUG ? SystemClock.elapsedRealtimeNanos() : 0;
+                    boolean consumed = false;
+                    try {
+                        consumed = entry.handler.onInterceptKeyBeforeQueueing(ctx);
+                    } catch (Throwable t) {
+                        XposedBridge.log(t);
+                    }
+                    // statistics are only collected in debug mode; key events are
+                    // dispatched from single input thread so no locking is needed
+                    if (DEBUG) {
+                        final long duration = SystemClock.elapsedRealtimeNanos() - start;
+                        entry.count++;
+                        entry.totalNanos += duration;
+                        entry.maxNanos = Math.max(entry.maxNanos, duration);
+                    }
+                    if (consumed) {
+                        if (DEBUG) log("Key event consumed by " + entry.name);
+                        break;
+                    }
+                }
+
+                if (DEBUG && ++mEventCount % STATS_LOG_INTERVAL == 0) {
+                    log(getStatistics());
+                }
+            }
+        });
+        mHooked = true;
+    }
+
+    /**
+     * Returns per-handler invocation counters and latencies collected in debug mode.
+     * Logged every STATS_LOG_INTERVAL key events from the input thread.
+     */
+    private static String getStatistics() {
+        StringBuilder sb = new StringBuilder(TAG);
+        for (HandlerEntry entry : mHandlers) {
+            sb.append("\n").append(entry.name)
+                .append(": count=").append(entry.count)
+                .append(", avg=").append(entry.count == 0 ? 0 : entry.totalNanos / entry.count / 1000)
+                .append("us")
+                .append(", max=").append(entry.maxNanos / 1000).append("us");
+        }
+        return sb.toString();
+    }
+}
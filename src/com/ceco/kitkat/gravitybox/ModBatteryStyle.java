@@ -68,6 +68,14 @@ public class ModBatteryStyle {
                         mBatteryStyle = intent.getIntExtra(GravityBoxSettings.EXTRA_BATTERY_STYLE, 1);
                         if (DEBUG) log("mBatteryStyle changed to: " + mBatteryStyle);
                         updateBatteryStyle();
+            } else if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_BATTERY_STYLE_CHANGED) &&
+                    intent.hasExtra(GravityBoxSettings.EXTRA_BATTERY_CHARGING_ANIM_FPS)) {
+                        int fps = intent.getIntExtra(GravityBoxSettings.EXTRA_BATTERY_CHARGING_ANIM_FPS,
+                                BatteryAnimationDriver.DEFAULT_FPS);
+                        if (DEBUG) log("Charging animation fps changed to: " + fps);
+                        if (mCircleBattery != null) {
+                            mCircleBattery.setAnimationMaxFps(fps);
+                        }
             } else if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_BATTERY_PERCENT_TEXT_CHANGED) &&
                     intent.hasExtra(GravityBoxSettings.EXTRA_BATTERY_PERCENT_TEXT)) {
                         mBatteryPercentTextEnabled = intent.getBooleanExtra(GravityBoxSettings.EXTRA_BATTERY_PERCENT_TEXT, false);
@@ -180,6 +188,8 @@ public class ModBatteryStyle {
                     mCircleBattery.setLayoutParams(lParams);
                     mCircleBattery.setPadding(6, 0, 0, 0);
                     mCircleBattery.setVisibility(View.GONE);
+                    mCircleBattery.setAnimationMaxFps(Integer.valueOf(prefs.getString(
+                            GravityBoxSettings.PREF_KEY_BATTERY_CHARGING_ANIM_FPS, "20")));
                     ModStatusbarColor.registerIconManagerListener(mCircleBattery);
                     vg.addView(mCircleBattery);
                     if (DEBUG) log("CmCircleBattery injected");
@@ -16,10 +16,12 @@
 package com.ceco.kitkat.gravitybox;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
 
 
 
+import android.animation.ValueAnimator;
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.content.BroadcastReceiver;
@@ -29,12 +31,16 @@ import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.text.format.Formatter;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewPropertyAnimator;
 import android.widget.FrameLayout;
 import android.widget.HorizontalScrollView;
 import android.widget.ImageView;
@@ -60,12 +66,18 @@ public class ModClearAllRecents {
     public static final String CLASS_RECENT_ACTIVITY = "com.android.systemui.recent.RecentsActivity";
     private static final boolean DEBUG = false;
 
+    private static final int REMOVE_TASK_KILL_PROCESS = 0x0001;
+    private static final long BULK_CLEAR_ANIM_DURATION = 250;
+    private static final long RAMBAR_SAMPLE_INTERVAL = 300;
+    private static final long RECLAIM_MONITOR_DURATION = 3000;
+
     public static final String NAVBAR_RECENTS_CLEAR_ALL = "navbarRecentsClearAll";
     public static final String EXTRA_NAVBAR_RECENTS_CLEAR_ALL = "navbarRecentsClearAllShow";
 
     private static XSharedPreferences mPrefs;
     private static ImageView mRecentsClearButton;
     private static int mClearRecentsMode;
+    private static boolean mClearRecentsPerTaskAnim;
     private static Activity mRecentsActivity;
     private static Handler mFinishHandler;
 
@@ -84,6 +96,13 @@ public class ModClearAllRecents {
     private static boolean mPreserveCurrentTask;
     private static boolean mNavbarAlwaysOnBottom;
     private static View mRecentsPanelView;
+    private static Handler mWorkerHandler;
+    private static RamSnapshot mRamSnapshot;
+    private static long mRamSnapshotTime;
+    private static boolean mRamSamplePending;
+    private static float mRamBarRatio;
+    private static ValueAnimator mRamBarAnimator;
+    private static volatile long mReclaimMonitorUntil;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -287,7 +306,12 @@ public class ModClearAllRecents {
         @Override
         protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
             if (mRamUsageBar != null && mRamUsageBar.getVisibility() == View.VISIBLE && mHandler != null) {
-                mHandler.post(updateRamBarTask);
+                // swiped away task gets killed so keep sampling while its memory is reclaimed
+                if ("handleSwipe".equals(param.method.getName())) {
+                    startReclaimMonitor();
+                } else {
+                    mHandler.post(updateRamBarTask);
+                }
             }
         }
     };
@@ -297,6 +321,8 @@ public class ModClearAllRecents {
         protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
             try {
                 mClearRecentsMode = Integer.valueOf(mPrefs.getString(GravityBoxSettings.PREF_KEY_CLEAR_RECENTS_MODE, "0"));
+                mClearRecentsPerTaskAnim = mPrefs.getBoolean(
+                        GravityBoxSettings.PREF_KEY_CLEAR_RECENTS_PER_TASK_ANIM, false);
                 Boolean show = (Boolean) param.args[0];
                 if (show) {
                     mPrefs.reload();
@@ -374,6 +400,16 @@ public class ModClearAllRecents {
 
         if (DEBUG) log("handleDismissChild - removing all views");
 
+        if (!mClearRecentsPerTaskAnim) {
+            try {
+                clearAllBulk(param.thisObject);
+            } catch (Throwable t) {
+                XposedBridge.log(t);
+            }
+            param.setResult(null);
+            return;
+        }
+
         // scroll recents tasks view to show the first task clearing will start from
         if (param.thisObject instanceof ScrollView) {
             ((ScrollView) param.thisObject).smoothScrollTo(0, 0);
@@ -421,6 +457,95 @@ public class ModClearAllRecents {
         param.setResult(null);
     }
 
+    // Removes all tasks in one pass and dismisses their views with single combined animation.
+    // Tasks are removed from activity manager in background and RAM bar is refreshed once it's done.
+    private static void clearAllBulk(Object scrollView) {
+        final LinearLayout linearLayout = (LinearLayout) XposedHelpers.getObjectField(scrollView, "mLinearLayout");
+        final Object callback = XposedHelpers.getObjectField(scrollView, "mCallback");
+        final List<?> taskDescriptions = (List<?>) XposedHelpers.getObjectField(
+                mRecentsPanelView, "mRecentTaskDescriptions");
+        final Object tasksLoader = XposedHelpers.getObjectField(mRecentsPanelView, "mRecentTasksLoader");
+
+        final int count = linearLayout.getChildCount();
+        final View preservedView = (mPreserveCurrentTask && count > 0) ?
+                linearLayout.getChildAt(count - 1) : null;
+        final List<View> removedViews = new ArrayList<View>();
+        final List<Integer> taskIds = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            final View child = linearLayout.getChildAt(i);
+            if (child == preservedView || child.getTag() == null) continue;
+            final Object td = XposedHelpers.getObjectField(child.getTag(), "taskDescription");
+            if (td == null) continue;
+            taskIds.add(XposedHelpers.getIntField(td, "persistentTaskId"));
+            taskDescriptions.remove(td);
+            XposedHelpers.callMethod(tasksLoader, "remove", td);
+            removedViews.add(child);
+        }
+        if (DEBUG) log("clearAllBulk: removing " + taskIds.size() + " tasks");
+        startReclaimMonitor();
+
+        getWorkerHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                for (Integer taskId : taskIds) {
+                    try {
+                        XposedHelpers.callMethod(mAm, "removeTask", taskId, REMOVE_TASK_KILL_PROCESS);
+                    } catch (Throwable t) {
+                        XposedBridge.log(t);
+                    }
+                }
+                // sample again now that all tasks are gone
+                startReclaimMonitor();
+            }
+        });
+
+        final Runnable endAction = new Runnable() {
+            @Override
+            public void run() {
+                for (View v : removedViews) {
+                    linearLayout.removeView(v);
+                }
+                try {
+                    if (preservedView != null && callback != null) {
+                        XposedHelpers.callMethod(callback, "handleOnClick", preservedView);
+                    } else {
+                        XposedHelpers.callMethod(mRecentsPanelView, "dismissAndGoBack");
+                    }
+                } catch (Throwable t) {
+                    XposedBridge.log(t);
+                }
+            }
+        };
+
+        if (removedViews.isEmpty()) {
+            endAction.run();
+            return;
+        }
+
+        // views are removed once the last of the animations has ended
+        final int[] pendingAnims = new int[] { removedViews.size() };
+        final Runnable animEndAction = new Runnable() {
+            @Override
+            public void run() {
+                if (--pendingAnims[0] == 0) {
+                    endAction.run();
+                }
+            }
+        };
+
+        final boolean vertical = scrollView instanceof ScrollView;
+        for (int i = 0; i < removedViews.size(); i++) {
+            final View v = removedViews.get(i);
+            final ViewPropertyAnimator anim = v.animate().alpha(0f).setDuration(BULK_CLEAR_ANIM_DURATION);
+            if (vertical) {
+                anim.translationX(v.getWidth());
+            } else {
+                anim.translationY(-v.getHeight());
+            }
+            anim.withEndAction(animEndAction);
+        }
+    }
+
     private static void updateRamBarLayout() {
         if (mRamUsageBar == null) return;
 
@@ -470,6 +595,25 @@ public class ModClearAllRecents {
         if (DEBUG) log("RAM bar layout updated");
     }
 
+    private static class RamSnapshot {
+        float usedRatio;
+        String usedText;
+        String freeText;
+    }
+
+    // background thread for RAM sampling and task removal
+    private static Handler getWorkerHandler() {
+        if (mWorkerHandler == null) {
+            HandlerThread thread = new HandlerThread("GB:RecentsWorker",
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mWorkerHandler = new Handler(thread.getLooper());
+        }
+        return mWorkerHandler;
+    }
+
+    // Shows last known values immediately and requests new sample from background thread
+    // unless one is pending already. Samples are taken at most once per RAMBAR_SAMPLE_INTERVAL.
     private static final Runnable updateRamBarTask = new Runnable() {
         @Override
         public void run() {
@@ -477,28 +621,87 @@ public class ModClearAllRecents {
                 return;
             }
 
-            ActivityManager.MemoryInfo memInfo = new ActivityManager.MemoryInfo();
-            mAm.getMemoryInfo(memInfo);
-            long secServerMem = 0;//XposedHelpers.getLongField(memInfo, "secondaryServerThreshold");
+            if (mRamSnapshot != null) {
+                applyRamSnapshot(mRamSnapshot, false);
+            }
+            if (mRamSamplePending) return;
+
+            mRamSamplePending = true;
+            final long delay = Math.max(0,
+                    mRamSnapshotTime + RAMBAR_SAMPLE_INTERVAL - SystemClock.uptimeMillis());
+            getWorkerHandler().postDelayed(sampleRamTask, delay);
+        }
+    };
+
+    // runs on worker thread
+    private static final Runnable sampleRamTask = new Runnable() {
+        @Override
+        public void run() {
             mMemInfoReader.readMemInfo();
-            long availMem = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize() -
-                    secServerMem;
+            long availMem = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize();
             long totalMem = mMemInfoReader.getTotalSize();
 
-            String sizeStr = Formatter.formatShortFileSize(mGbContext, totalMem-availMem);
-            mForegroundProcessText.setText(mGbContext.getResources().getString(
-                    R.string.service_foreground_processes, sizeStr));
-            sizeStr = Formatter.formatShortFileSize(mGbContext, availMem);
-            mBackgroundProcessText.setText(mGbContext.getResources().getString(
-                    R.string.service_background_processes, sizeStr));
-
-            float fTotalMem = totalMem;
-            float fAvailMem = availMem;
-            mRamUsageBar.setRatios((fTotalMem - fAvailMem) / fTotalMem, 0, 0);
-            if (DEBUG) log("RAM bar values updated");
+            final RamSnapshot snapshot = new RamSnapshot();
+            snapshot.usedRatio = totalMem > 0 ? (float) (totalMem - availMem) / (float) totalMem : 0;
+            snapshot.usedText = mGbContext.getResources().getString(R.string.service_foreground_processes,
+                    Formatter.formatShortFileSize(mGbContext, totalMem - availMem));
+            snapshot.freeText = mGbContext.getResources().getString(R.string.service_background_processes,
+                    Formatter.formatShortFileSize(mGbContext, availMem));
+
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // very first sample is shown as is instead of animating bar up from zero
+                    final boolean animate = mRamSnapshot != null;
+                    mRamSamplePending = false;
+                    mRamSnapshotTime = SystemClock.uptimeMillis();
+                    mRamSnapshot = snapshot;
+                    if (mRamUsageBar != null && mRamUsageBar.getVisibility() == View.VISIBLE) {
+                        applyRamSnapshot(snapshot, animate);
+                        // keep sampling while memory of killed tasks is being reclaimed
+                        if (mRamSnapshotTime < mReclaimMonitorUntil) {
+                            mHandler.post(updateRamBarTask);
+                        }
+                    }
+                }
+            });
         }
     };
 
+    private static void applyRamSnapshot(RamSnapshot snapshot, boolean animate) {
+        mForegroundProcessText.setText(snapshot.usedText);
+        mBackgroundProcessText.setText(snapshot.freeText);
+
+        if (mRamBarAnimator != null) {
+            mRamBarAnimator.cancel();
+            mRamBarAnimator = null;
+        }
+        if (!animate || mRamBarRatio == snapshot.usedRatio) {
+            mRamBarRatio = snapshot.usedRatio;
+            mRamUsageBar.setRatios(mRamBarRatio, 0, 0);
+            return;
+        }
+
+        mRamBarAnimator = ValueAnimator.ofFloat(mRamBarRatio, snapshot.usedRatio);
+        mRamBarAnimator.setDuration(RAMBAR_SAMPLE_INTERVAL);
+        mRamBarAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                mRamBarRatio = (Float) animation.getAnimatedValue();
+                mRamUsageBar.setRatios(mRamBarRatio, 0, 0);
+            }
+        });
+        mRamBarAnimator.start();
+        if (DEBUG) log("RAM bar values updated");
+    }
+
+    private static void startReclaimMonitor() {
+        mReclaimMonitorUntil = SystemClock.uptimeMillis() + RECLAIM_MONITOR_DURATION;
+        if (mHandler != null) {
+            mHandler.post(updateRamBarTask);
+        }
+    }
+
     private static final void clearAll(boolean longPress) {
         try {
             if (mRecentsPanelView != null) {
@@ -15,7 +15,6 @@
 
 package com.ceco.kitkat.gravitybox;
 
-import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,7 +32,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -100,11 +98,33 @@ public class ModDialer {
     private static Class<?> mClassInCallPresenter;
     private static boolean mNonIntrusiveIncomingCallBlocked;
     private static boolean mIsCallUiInBackground;
+    private static CallerPhotoProvider mCallerPhotoProvider;
+    private static Drawable.ConstantState mPicUnknownState;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
     }
 
+    private static Drawable.ConstantState getPicUnknownState(Fragment frag) {
+        if (mPicUnknownState == null) {
+            final Resources res = frag.getResources();
+            final int resId = res.getIdentifier("picture_unknown", "drawable",
+                    res.getResourcePackageName(frag.getId()));
+            if (resId != 0) {
+                mPicUnknownState = res.getDrawable(resId).getConstantState();
+            }
+        }
+        return mPicUnknownState;
+    }
+
+    private static CallerPhotoProvider getCallerPhotoProvider(Fragment frag) {
+        if (mCallerPhotoProvider == null) {
+            mCallerPhotoProvider = new CallerPhotoProvider(
+                    frag.getActivity().getApplicationContext());
+        }
+        return mCallerPhotoProvider;
+    }
+
     private static PhoneSensorEventListener mPhoneSensorEventListener = 
             new PhoneSensorEventListener(new PhoneSensorEventListener.ActionHandler() {
         @Override
@@ -329,34 +349,60 @@ public class ModDialer {
         try {
             final Class<?> classCallCardFragment = XposedHelpers.findClass(CLASS_CALL_CARD_FRAGMENT, classLoader);
 
+            XposedBridge.hookAllMethods(classCallCardFragment, "onCreateView", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    if (!prefs.getBoolean(
+                            GravityBoxSettings.PREF_KEY_CALLER_UNKNOWN_PHOTO_ENABLE, false)) return;
+
+                    // prepare unknown caller photo ahead of time so call card updates need no disk I/O
+                    getCallerPhotoProvider((Fragment) param.thisObject).refresh(null);
+                }
+            });
+
             XposedHelpers.findAndHookMethod(classCallCardFragment, "setDrawableToImageView",
                     ImageView.class, Drawable.class, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
+                    final ImageView imageView = (ImageView) param.args[0];
+                    // every update of image view invalidates photos requested by previous updates
+                    Integer generation = (Integer) XposedHelpers.getAdditionalInstanceField(
+                            imageView, "gbPhotoGeneration");
+                    final int currentGeneration = generation == null ? 0 : generation + 1;
+                    XposedHelpers.setAdditionalInstanceField(imageView, "gbPhotoGeneration", currentGeneration);
+
                     if (!prefs.getBoolean(
                             GravityBoxSettings.PREF_KEY_CALLER_UNKNOWN_PHOTO_ENABLE, false)) return;
 
+                    final Fragment frag = (Fragment) param.thisObject;
                     boolean shouldShowUnknownPhoto = param.args[1] == null;
                     if (param.args[1] != null) {
-                        final Fragment frag = (Fragment) param.thisObject;
-                        final Resources res = frag.getResources();
-                        Drawable picUnknown = res.getDrawable(res.getIdentifier("picture_unknown", "drawable",
-                                        res.getResourcePackageName(frag.getId())));
-                        shouldShowUnknownPhoto = ((Drawable)param.args[1]).getConstantState().equals(
-                                                    picUnknown.getConstantState());
+                        final Drawable.ConstantState picUnknownState = getPicUnknownState(frag);
+                        shouldShowUnknownPhoto = picUnknownState != null && picUnknownState.equals(
+                                ((Drawable)param.args[1]).getConstantState());
                     }
 
                     if (shouldShowUnknownPhoto) {
-                        final Context context = ((View) param.args[0]).getContext();
-                        final Context gbContext = context.createPackageContext(GravityBox.PACKAGE_NAME, 0);
-                        final String path = gbContext.getFilesDir() + "/caller_photo";
-                        File f = new File(path);
-                        if (f.exists() && f.canRead()) {
-                            Bitmap b = BitmapFactory.decodeFile(path);
-                            if (b != null) {
-                                param.args[1] = new BitmapDrawable(context.getResources(), b);
-                                if (DEBUG) log("Unknow caller photo set");
-                            }
+                        final CallerPhotoProvider photoProvider = getCallerPhotoProvider(frag);
+                        final Bitmap b = photoProvider.getPhoto();
+                        if (b != null) {
+                            param.args[1] = new BitmapDrawable(imageView.getResources(), b);
+                            if (DEBUG) log("Unknow caller photo set");
+                        } else {
+                            // photo not decoded yet; set it once available unless card changed meanwhile
+                            photoProvider.refresh(new CallerPhotoProvider.PhotoListener() {
+                                @Override
+                                public void onPhotoLoaded(Bitmap photo) {
+                                    final Integer latestGeneration = (Integer) XposedHelpers.getAdditionalInstanceField(
+                                            imageView, "gbPhotoGeneration");
+                                    if (photo != null && latestGeneration != null &&
+                                            latestGeneration == currentGeneration) {
+                                        imageView.setImageDrawable(
+                                                new BitmapDrawable(imageView.getResources(), photo));
+                                        if (DEBUG) log("Unknow caller photo set after load");
+                                    }
+                                }
+                            });
                         }
                     }
                 }
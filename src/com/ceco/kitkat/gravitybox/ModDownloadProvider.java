@@ -16,8 +16,15 @@
 
 package com.ceco.kitkat.gravitybox;
 
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
@@ -32,8 +39,31 @@ public class ModDownloadProvider {
 
     public static final String ACTION_DOWNLOAD_STATE_CHANGED = "gravitybox.intent.action.DOWNLOAD_STATE_CHANGED";
     public static final String EXTRA_ACTIVE = "isActive";
+    public static final String ACTION_DOWNLOAD_PROGRESS = "gravitybox.intent.action.DOWNLOAD_PROGRESS";
+    public static final String EXTRA_DOWNLOAD_COUNT = "downloadCount";
+    public static final String EXTRA_BYTES_CURRENT = "bytesCurrent";
+    public static final String EXTRA_BYTES_TOTAL = "bytesTotal";
+    public static final String EXTRA_THROUGHPUT = "throughput";
+    public static final String EXTRA_ETA = "eta";
+
+    // Downloads.Impl.STATUS_RUNNING
+    private static final int STATUS_RUNNING = 192;
+    private static final long PROGRESS_INTERVAL = 1000;
 
     private static boolean mIsActive;
+    private static Field mFieldId;
+    private static Field mFieldStatus;
+    private static Field mFieldCurrentBytes;
+    private static Field mFieldTotalBytes;
+    private static Map<Long, Long> mLastBytes = new HashMap<Long, Long>();
+    private static long mTransferredBytes;
+    private static ThroughputEstimator mEstimator = new ThroughputEstimator();
+    private static Handler mHandler;
+    private static Intent mPendingProgress;
+    private static Context mProgressContext;
+    private static final Object mProgressLock = new Object();
+    private static long mLastProgressSent;
+    private static int mLastCount;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -47,18 +77,130 @@ public class ModDownloadProvider {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) throws Throwable {
                     final boolean isActive = (Boolean) param.getResult();
+                    final Context context = (Context) param.thisObject;
                     if (mIsActive != isActive) { 
                         mIsActive = isActive;
                         if (DEBUG) log("Download state changed; active=" + mIsActive);
-                        final Context context = (Context) param.thisObject;
                         Intent intent = new Intent(ACTION_DOWNLOAD_STATE_CHANGED);
                         intent.putExtra(EXTRA_ACTIVE, mIsActive);
                         context.sendBroadcast(intent);
                     }
+                    try {
+                        trackProgress(context);
+                    } catch (Throwable t) {
+                        XposedBridge.log(t);
+                    }
                 }
             });
         } catch (Throwable t) {
             XposedBridge.log(t);
         }
     }
+
+    /**
+     * Aggregates progress of running downloads from in-memory state of DownloadService
+     * which has just been refreshed by updateLocked() and is still guarded by its lock.
+     * Resulting progress broadcasts are coalesced so that at most one is sent per PROGRESS_INTERVAL.
+     */
+    private static void trackProgress(Context service) throws Throwable {
+        final Map<?, ?> downloads = (Map<?, ?>) XposedHelpers.getObjectField(service, "mDownloads");
+
+        int count = 0;
+        long currentBytes = 0;
+        long totalBytes = 0;
+        final Map<Long, Long> lastBytes = new HashMap<Long, Long>();
+        for (Object info : downloads.values()) {
+            if (mFieldId == null) {
+                Class<?> clazz = info.getClass();
+                mFieldId = XposedHelpers.findField(clazz, "mId");
+                mFieldStatus = XposedHelpers.findField(clazz, "mStatus");
+                mFieldCurrentBytes = XposedHelpers.findField(clazz, "mCurrentBytes");
+                mFieldTotalBytes = XposedHelpers.findField(clazz, "mTotalBytes");
+            }
+            if (mFieldStatus.getInt(info) != STATUS_RUNNING) continue;
+
+            final long id = mFieldId.getLong(info);
+            final long current = mFieldCurrentBytes.getLong(info);
+            final long total = mFieldTotalBytes.getLong(info);
+            count++;
+            currentBytes += current;
+            // total stays unknown as long as any of running downloads doesn't know its size
+            if (totalBytes != -1) {
+                totalBytes = total > 0 ? totalBytes + total : -1;
+            }
+            Long last = mLastBytes.get(id);
+            if (last != null && current > last) {
+                mTransferredBytes += current - last;
+            }
+            lastBytes.put(id, current);
+        }
+        mLastBytes = lastBytes;
+
+        // nothing to report when idle and idle state was already reported
+        if (count == 0 && mLastCount == 0) return;
+        mLastCount = count;
+
+        final long now = SystemClock.elapsedRealtime();
+        if (count == 0) {
+            mEstimator.reset();
+        } else {
+            mEstimator.update(mTransferredBytes, now);
+        }
+        final long throughput = mEstimator.getRate();
+
+        Intent intent = new Intent(ACTION_DOWNLOAD_PROGRESS);
+        intent.putExtra(EXTRA_DOWNLOAD_COUNT, count);
+        intent.putExtra(EXTRA_BYTES_CURRENT, currentBytes);
+        intent.putExtra(EXTRA_BYTES_TOTAL, count == 0 ? 0 : totalBytes);
+        intent.putExtra(EXTRA_THROUGHPUT, throughput);
+        intent.putExtra(EXTRA_ETA, totalBytes > 0 && throughput > 0 ?
+                (totalBytes - currentBytes) / throughput : -1);
+        scheduleProgress(service, intent, now);
+    }
+
+    private static void scheduleProgress(Context context, Intent intent, long now) {
+        if (mHandler == null) {
+            // DownloadService quits its update thread once idle so post to main thread instead
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+
+        synchronized (mProgressLock) {
+            mProgressContext = context;
+            if (intent.getIntExtra(EXTRA_DOWNLOAD_COUNT, 0) == 0) {
+                // final idle update is sent right away replacing any pending one
+                mHandler.removeCallbacks(mSendProgressRunnable);
+                mPendingProgress = intent;
+            } else {
+                final boolean scheduled = mPendingProgress != null;
+                mPendingProgress = intent;
+                if (scheduled) return;
+
+                final long delay = Math.max(0, mLastProgressSent + PROGRESS_INTERVAL - now);
+                if (!mHandler.postDelayed(mSendProgressRunnable, delay)) {
+                    mPendingProgress = null;
+                }
+                return;
+            }
+        }
+        mSendProgressRunnable.run();
+    }
+
+    private static Runnable mSendProgressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Intent intent;
+            final Context context;
+            synchronized (mProgressLock) {
+                intent = mPendingProgress;
+                context = mProgressContext;
+                mPendingProgress = null;
+                if (intent == null) return;
+                mLastProgressSent = SystemClock.elapsedRealtime();
+            }
+            if (DEBUG) log("Sending download progress: count=" +
+                    intent.getIntExtra(EXTRA_DOWNLOAD_COUNT, 0) + "; throughput=" +
+                    intent.getLongExtra(EXTRA_THROUGHPUT, 0));
+            context.sendBroadcast(intent);
+        }
+    };
 }
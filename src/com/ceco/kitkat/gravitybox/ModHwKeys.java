@@ -15,6 +15,7 @@
 
 package com.ceco.kitkat.gravitybox;
 
+import java.lang.reflect.Method;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -51,6 +52,7 @@ import android.view.ViewConfiguration;
 import android.widget.Toast;
 
 import com.ceco.kitkat.gravitybox.R;
+import com.ceco.kitkat.gravitybox.KeyInterceptionPipeline.KeyContext;
 import com.ceco.kitkat.gravitybox.ledcontrol.QuietHoursActivity;
 import com.ceco.kitkat.gravitybox.shortcuts.RingerModeShortcut;
 import com.ceco.kitkat.gravitybox.shortcuts.ShortcutActivity;
@@ -60,7 +62,6 @@ import de.robv.android.xposed.XC_MethodReplacement;
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
-import de.robv.android.xposed.callbacks.XCallback;
 
 public class ModHwKeys {
     private static final String TAG = "GB:ModHwKeys";
@@ -96,7 +97,6 @@ public class ModHwKeys {
     public static final String ACTION_RECENTS_CLEAR_ALL_SINGLETAP = "gravitybox.intent.action.ACTION_RECENTS_CLEARALL";
     public static final String ACTION_RECENTS_CLEAR_ALL_LONGPRESS = "gravitybox.intent.action.ACTION_RECENTS_CLEARALL_LONGPRESS";
     public static final String ACTION_TOGGLE_QUIET_HOURS = "gravitybox.intent.action.ACTION_TOGGLE_QUIET_HOURS";
-    public static final String ACTION_TOGGLE_AIRPLANE_MODE = "gravitybox.intent.action.TOGGLE_AIRPLANE_MODE";
     public static final String ACTION_INAPP_SEARCH = "gravitybox.intent.action.INAPP_SEARCH";
     public static final String ACTION_SET_RINGER_MODE = "gravitybox.intent.action.SET_RINGER_MODE";
     public static final String EXTRA_RINGER_MODE = "ringerMode";
@@ -107,6 +107,7 @@ public class ModHwKeys {
     public static final String SETTING_VIBRATE_WHEN_RINGING = "vibrate_when_ringing";
 
     private static Object mPhoneWindowManager;
+    private static Method mMethodPerformHapticFeedback;
     private static Context mContext;
     private static Context mGbContext;
     private static String mStrAppKilled;
@@ -356,8 +357,6 @@ public class ModHwKeys {
                         GravityBoxSettings.EXTRA_VK_VIBRATE_PATTERN));
             } else if (action.equals(ACTION_TOGGLE_QUIET_HOURS)) {
                 toggleQuietHours(intent.getStringExtra(QuietHoursActivity.EXTRA_QH_MODE));
-            } else if (action.equals(ACTION_TOGGLE_AIRPLANE_MODE)) {
-                toggleAirplaneMode();
             } else if (action.equals(ACTION_INAPP_SEARCH)) {
                 injectKey(KeyEvent.KEYCODE_SEARCH);
             } else if (action.equals(ACTION_SET_RINGER_MODE)) {
@@ -438,42 +437,28 @@ public class ModHwKeys {
             mHeadsetUri[1] = prefs.getString(GravityBoxSettings.PREF_KEY_HEADSET_ACTION_PLUG, null);
 
             final Class<?> classPhoneWindowManager = XposedHelpers.findClass(CLASS_PHONE_WINDOW_MANAGER, null);
+            // resolved once here as it's used from key event path
+            mMethodPerformHapticFeedback = XposedHelpers.findMethodExact(classPhoneWindowManager,
+                    "performHapticFeedbackLw", XposedHelpers.findClass(CLASS_WINDOW_STATE, null),
+                    int.class, boolean.class);
 
             XposedHelpers.findAndHookMethod(classPhoneWindowManager, "init",
                 Context.class, CLASS_IWINDOW_MANAGER, CLASS_WINDOW_MANAGER_FUNCS, phoneWindowManagerInitHook);
 
-            XposedHelpers.findAndHookMethod(classPhoneWindowManager, "interceptKeyBeforeQueueing", 
-                    KeyEvent.class, int.class, boolean.class, new XC_MethodHook(XCallback.PRIORITY_HIGHEST) {
+            KeyInterceptionPipeline.addHandler("hwkeys", KeyInterceptionPipeline.ORDER_HWKEYS,
+                    new KeyInterceptionPipeline.KeyHandler() {
                 @Override
-                protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
-                    KeyEvent event = (KeyEvent) param.args[0];
-                    int keyCode = event.getKeyCode();
-                    boolean down = event.getAction() == KeyEvent.ACTION_DOWN;
-                    boolean keyguardOn = (Boolean) XposedHelpers.callMethod(mPhoneWindowManager, "keyguardOn");
-                    boolean isFromSystem = (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0;
-                    Handler handler = (Handler) XposedHelpers.getObjectField(param.thisObject, "mHandler");
-                    if (DEBUG) log("interceptKeyBeforeQueueing: keyCode=" + keyCode +
-                            "; action=" + event.getAction() + "; repeatCount=" + event.getRepeatCount());
+                public boolean onInterceptKeyBeforeQueueing(KeyContext ctx) throws Throwable {
+                    final KeyEvent event = ctx.event;
+                    final int keyCode = ctx.keyCode;
+                    final boolean down = ctx.down;
 
                     if (keyCode == KeyEvent.KEYCODE_VOLUME_UP) {
                         if (!down) {
-                            handler.removeCallbacks(mResetBrightnessRunnable);
-                        } else {
-                            if (event.getRepeatCount() == 0) {
-                                handler.postDelayed(mResetBrightnessRunnable, 7000);
-                            }
-                        }
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_VOLUME_DOWN && keyguardOn &&
-                            mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_VOLDOWN_LONGPRESS &&
-                            !(Boolean) XposedHelpers.callMethod(param.thisObject, "isMusicActive")) {
-                        if (!down) {
-                            handler.removeCallbacks(mLockscreenTorchRunnable);
+                            ctx.getHandler().removeCallbacks(mResetBrightnessRunnable);
                         } else {
                             if (event.getRepeatCount() == 0) {
-                                handler.postDelayed(mLockscreenTorchRunnable, 
-                                        ViewConfiguration.getLongPressTimeout());
+                                ctx.getHandler().postDelayed(mResetBrightnessRunnable, 7000);
                             }
                         }
                     }
@@ -481,7 +466,7 @@ public class ModHwKeys {
                     if (!mVolumeRockerWake.equals("default") && 
                             (keyCode == KeyEvent.KEYCODE_VOLUME_UP ||
                                     keyCode == KeyEvent.KEYCODE_VOLUME_DOWN)) {
-                        int policyFlags = (Integer) param.args[1];
+                        int policyFlags = (Integer) ctx.param.args[1];
                         if (mVolumeRockerWake.equals("enabled")) {
                             policyFlags |= FLAG_WAKE;
                             policyFlags |= FLAG_WAKE_DROPPED;
@@ -489,26 +474,27 @@ public class ModHwKeys {
                             policyFlags &= ~FLAG_WAKE;
                             policyFlags &= ~FLAG_WAKE_DROPPED;
                         }
-                        param.args[1] = policyFlags;
-                        return;
+                        ctx.param.args[1] = policyFlags;
+                        return false;
                     }
 
                     if (keyCode == KeyEvent.KEYCODE_HOME) {
+                        final Handler handler = ctx.getHandler();
                         if (!down) {
                             handler.removeCallbacks(mLockscreenTorchRunnable);
                             if (mIsHomeLongPressed) {
                                 mIsHomeLongPressed = false;
-                                param.setResult(0);
-                                return;
+                                ctx.consume();
+                                return true;
                             }
                             if (!areHwKeysEnabled() && 
                                     event.getRepeatCount() == 0 &&
                                     (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0) {
                                if (DEBUG) log("HOME KeyEvent coming from HW key and keys disabled. Ignoring.");
-                               param.setResult(0);
-                               return;
+                               ctx.consume();
+                               return true;
                            }
-                        } else if (keyguardOn) {
+                        } else if (ctx.isKeyguardOn()) {
                             if (event.getRepeatCount() == 0) {
                                 mIsHomeLongPressed = false;
                                 if (mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_HOME_LONGPRESS) {
@@ -517,56 +503,84 @@ public class ModHwKeys {
                                 }
                             } else {
                                 if (mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_HOME_LONGPRESS) {
-                                    param.setResult(0);
+                                    ctx.consume();
+                                    return true;
                                 }
-                                return;
                             }
                         }
                     }
 
-                    if (keyCode == KeyEvent.KEYCODE_SOFT_LEFT) {
-                        if (!down) {
-                            mCustomKeyPressed = false;
-                            if (!mIsCustomKeyLongPressed && 
-                                    !mCustomKeyDoubletapPending && !mWasCustomKeyDoubletap) {
-                                if (DEBUG) log("Custom key singletap action");
-                                performAction(HwKeyTrigger.CUSTOM_SINGLETAP);
-                            }
-                            mIsCustomKeyLongPressed = false;
+                    return false;
+                }
+            });
+
+            KeyInterceptionPipeline.addHandler("torch", KeyInterceptionPipeline.ORDER_TORCH,
+                    new KeyInterceptionPipeline.KeyHandler() {
+                @Override
+                public boolean onInterceptKeyBeforeQueueing(KeyContext ctx) throws Throwable {
+                    if (ctx.keyCode == KeyEvent.KEYCODE_VOLUME_DOWN &&
+                            mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_VOLDOWN_LONGPRESS &&
+                            ctx.isKeyguardOn() && !ctx.isMusicActive()) {
+                        if (!ctx.down) {
+                            ctx.getHandler().removeCallbacks(mLockscreenTorchRunnable);
                         } else {
-                            mCustomKeyPressed = true;
-                            if (event.getRepeatCount() == 0) {
-                                if (mCustomKeyDoubletapPending) {
-                                    handler.removeCallbacks(mCustomKeyDoubletapReset);
-                                    mWasCustomKeyDoubletap = true;
-                                    mCustomKeyDoubletapPending = false;
-                                    if (DEBUG) log("Custom key double-tap action");
-                                    performAction(HwKeyTrigger.CUSTOM_DOUBLETAP);
-                                } else if (mCustomKeyDoubletapAction != GravityBoxSettings.HWKEY_ACTION_DEFAULT
-                                            && isFromSystem) {
-                                    mCustomKeyDoubletapPending = true;
-                                    mWasCustomKeyDoubletap = false;
-                                    handler.postDelayed(mCustomKeyDoubletapReset, mDoubletapSpeed);
-                                }
-                                if (isFromSystem) {
-                                    XposedHelpers.callMethod(param.thisObject, "performHapticFeedbackLw",
-                                        new Class<?> [] { Class.forName(CLASS_WINDOW_STATE), int.class, boolean.class },
-                                        null, HapticFeedbackConstants.VIRTUAL_KEY, false);
-                                }
-                            } else {
-                                handler.removeCallbacks(mCustomKeyDoubletapReset);
+                            if (ctx.event.getRepeatCount() == 0) {
+                                ctx.getHandler().postDelayed(mLockscreenTorchRunnable, 
+                                        ViewConfiguration.getLongPressTimeout());
+                            }
+                        }
+                    }
+                    return false;
+                }
+            });
+
+            KeyInterceptionPipeline.addHandler("customkey", KeyInterceptionPipeline.ORDER_CUSTOM_KEY,
+                    new KeyInterceptionPipeline.KeyHandler() {
+                @Override
+                public boolean onInterceptKeyBeforeQueueing(KeyContext ctx) throws Throwable {
+                    if (ctx.keyCode != KeyEvent.KEYCODE_SOFT_LEFT) return false;
+
+                    final KeyEvent event = ctx.event;
+                    final boolean isFromSystem = (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0;
+                    if (!ctx.down) {
+                        mCustomKeyPressed = false;
+                        if (!mIsCustomKeyLongPressed && 
+                                !mCustomKeyDoubletapPending && !mWasCustomKeyDoubletap) {
+                            if (DEBUG) log("Custom key singletap action");
+                            performAction(HwKeyTrigger.CUSTOM_SINGLETAP);
+                        }
+                        mIsCustomKeyLongPressed = false;
+                    } else {
+                        mCustomKeyPressed = true;
+                        if (event.getRepeatCount() == 0) {
+                            if (mCustomKeyDoubletapPending) {
+                                ctx.getHandler().removeCallbacks(mCustomKeyDoubletapReset);
+                                mWasCustomKeyDoubletap = true;
                                 mCustomKeyDoubletapPending = false;
-                                mIsCustomKeyLongPressed = true;
-                                if (DEBUG) log("Custom key long-press action");
-                                performAction(HwKeyTrigger.CUSTOM_LONGPRESS);
-                                XposedHelpers.callMethod(param.thisObject, "performHapticFeedbackLw",
-                                        new Class<?> [] { Class.forName(CLASS_WINDOW_STATE), int.class, boolean.class },
-                                        null, HapticFeedbackConstants.LONG_PRESS, false);
+                                if (DEBUG) log("Custom key double-tap action");
+                                performAction(HwKeyTrigger.CUSTOM_DOUBLETAP);
+                            } else if (mCustomKeyDoubletapAction != GravityBoxSettings.HWKEY_ACTION_DEFAULT
+                                        && isFromSystem) {
+                                mCustomKeyDoubletapPending = true;
+                                mWasCustomKeyDoubletap = false;
+                                ctx.getHandler().postDelayed(mCustomKeyDoubletapReset, mDoubletapSpeed);
                             }
+                            if (isFromSystem) {
+                                mMethodPerformHapticFeedback.invoke(ctx.param.thisObject,
+                                        null, HapticFeedbackConstants.VIRTUAL_KEY, false);
+                            }
+                        } else {
+                            ctx.getHandler().removeCallbacks(mCustomKeyDoubletapReset);
+                            mCustomKeyDoubletapPending = false;
+                            mIsCustomKeyLongPressed = true;
+                            if (DEBUG) log("Custom key long-press action");
+                            performAction(HwKeyTrigger.CUSTOM_LONGPRESS);
+                            mMethodPerformHapticFeedback.invoke(ctx.param.thisObject,
+                                    null, HapticFeedbackConstants.LONG_PRESS, false);
                         }
-                        param.setResult(0);
-                        return;
                     }
+                    ctx.consume();
+                    return true;
                 }
             });
 
@@ -872,7 +886,6 @@ public class ModHwKeys {
             intentFilter.addAction(ACTION_SHOW_BRIGHTNESS_DIALOG);
             intentFilter.addAction(GravityBoxSettings.ACTION_PREF_VK_VIBRATE_PATTERN_CHANGED);
             intentFilter.addAction(ACTION_TOGGLE_QUIET_HOURS);
-            intentFilter.addAction(ACTION_TOGGLE_AIRPLANE_MODE);
             intentFilter.addAction(ACTION_INAPP_SEARCH);
             intentFilter.addAction(ACTION_SET_RINGER_MODE);
             intentFilter.addAction(GravityBoxService.ACTION_TOGGLE_SYNC);
@@ -1681,19 +1694,6 @@ public class ModHwKeys {
         }
     }
 
-    private static void toggleAirplaneMode() {
-        try {
-            ContentResolver cr = mContext.getContentResolver();
-            boolean enabled = Settings.Global.getInt(cr, Settings.Global.AIRPLANE_MODE_ON, 0) == 1;
-            Settings.Global.putInt(cr, Settings.Global.AIRPLANE_MODE_ON, enabled ? 0 : 1);
-            Intent intent = new Intent(Intent.ACTION_AIRPLANE_MODE_CHANGED);
-            intent.putExtra("state", !enabled);
-            mContext.sendBroadcast(intent);
-        } catch (Throwable t) {
-            XposedBridge.log(t);
-        }
-    }
-
     private static void setRingerMode(int mode)
     {
         try {
@@ -28,6 +28,7 @@ import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Display;
 import android.view.HapticFeedbackConstants;
@@ -46,7 +47,6 @@ import com.ceco.kitkat.gravitybox.GlowPadHelper.AppInfo;
 import com.ceco.kitkat.gravitybox.shortcuts.ShortcutActivity;
 
 import de.robv.android.xposed.XC_MethodHook;
-import de.robv.android.xposed.XC_MethodReplacement;
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
@@ -74,6 +74,8 @@ public class ModNavigationBar {
     private static final int STATUS_BAR_DISABLE_RECENT = 0x01000000;
 
     private static XSharedPreferences mPrefs;
+    private static SparseArray<String> mLayoutRedirects = new SparseArray<String>();
+    private static SparseArray<String> mLayoutFileNames = new SparseArray<String>();
     private static boolean mAlwaysShowMenukey;
     private static View mNavigationBarView;
     private static Object[] mRecentsKeys;
@@ -270,28 +272,55 @@ public class ModNavigationBar {
                         XposedHelpers.setBooleanField(param.thisObject, "mNavigationBarCanMove", false);
                     }
                 });
+            }
+        } catch (Throwable t) {
+            XposedBridge.log(t);
+        }
+    }
 
-                XposedHelpers.findAndHookMethod(Resources.class, "loadXmlResourceParser",
-                        String.class, int.class, int.class, String.class, new XC_MethodReplacement() {
-                    @Override
-                    protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
-                        final String originalResPath = (String) param.args[0];
-                        try {
-                            if ("res/layout/navigation_bar.xml".equals(param.args[0])) {
-                                param.args[0] = "res/layout-sw600dp/navigation_bar.xml";
-                            } else if ("res/layout/status_bar_search_panel.xml".equals(param.args[0]) ||
-                                    "res/layout-land/status_bar_search_panel.xml".equals(param.args[0])) {
-                                param.args[0] = "res/layout-sw600dp/status_bar_search_panel.xml";
-                            }
-                            return XposedBridge.invokeOriginalMethod(param.method, param.thisObject, param.args);
-                        } catch (Throwable t) {
-                            log("loadXmlResourceParser throwing exception. Invoking original method.");
-                            param.args[0] = originalResPath;
-                            return XposedBridge.invokeOriginalMethod(param.method, param.thisObject, param.args);
-                        }
+    /**
+     * Redirects navigation bar and search panel layouts to their sw600dp variants
+     * which don't rotate with the screen. Hook is installed in SystemUI process only
+     * and redirect is decided by looking up resource id in precomputed table so that
+     * other XML resources loaded by SystemUI don't pay for any string comparisons.
+     */
+    private static void initLayoutRedirect(final ClassLoader classLoader) {
+        try {
+            final Class<?> layoutClass = XposedHelpers.findClass(PACKAGE_NAME + ".R$layout", classLoader);
+            final int navbarId = XposedHelpers.getStaticIntField(layoutClass, "navigation_bar");
+            final int searchPanelId = XposedHelpers.getStaticIntField(layoutClass, "status_bar_search_panel");
+            mLayoutRedirects.put(navbarId, "res/layout-sw600dp/navigation_bar.xml");
+            mLayoutFileNames.put(navbarId, "/navigation_bar.xml");
+            mLayoutRedirects.put(searchPanelId, "res/layout-sw600dp/status_bar_search_panel.xml");
+            mLayoutFileNames.put(searchPanelId, "/status_bar_search_panel.xml");
+            if (DEBUG) log("Layout redirects: " + mLayoutRedirects);
+
+            XposedHelpers.findAndHookMethod(Resources.class, "loadXmlResourceParser",
+                    String.class, int.class, int.class, String.class, new XC_MethodHook() {
+                @Override
+                protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
+                    final String redirectPath = mLayoutRedirects.get((Integer) param.args[1]);
+                    // ids of other packages sharing SystemUI process might collide so verify
+                    // the file really is a layout from SystemUI package being redirected
+                    if (redirectPath == null || !(param.args[0] instanceof String) ||
+                            !((String) param.args[0]).endsWith(
+                                    mLayoutFileNames.get((Integer) param.args[1]))) {
+                        return;
                     }
-                });
-            }
+                    param.setObjectExtra("originalResPath", param.args[0]);
+                    param.args[0] = redirectPath;
+                }
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    final Object originalResPath = param.getObjectExtra("originalResPath");
+                    if (originalResPath != null && param.getThrowable() != null) {
+                        log("loadXmlResourceParser throwing exception. Invoking original method.");
+                        param.args[0] = originalResPath;
+                        param.setResult(XposedBridge.invokeOriginalMethod(
+                                param.method, param.thisObject, param.args));
+                    }
+                }
+            });
         } catch (Throwable t) {
             XposedBridge.log(t);
         }
@@ -301,6 +330,10 @@ public class ModNavigationBar {
         try {
             mPrefs = prefs;
 
+            if (prefs.getBoolean(GravityBoxSettings.PREF_KEY_NAVBAR_ALWAYS_ON_BOTTOM, false)) {
+                initLayoutRedirect(classLoader);
+            }
+
             final Class<?> navbarViewClass = XposedHelpers.findClass(CLASS_NAVBAR_VIEW, classLoader);
             final Class<?> navbarTransitionsClass = XposedHelpers.findClass(CLASS_NAVBAR_TRANSITIONS, classLoader);
             final Class<?> barTransitionsClass = XposedHelpers.findClass(CLASS_BAR_TRANSITIONS, classLoader);
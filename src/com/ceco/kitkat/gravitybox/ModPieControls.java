@@ -28,12 +28,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
-import android.content.res.Resources;
 import android.database.ContentObserver;
 import android.graphics.PixelFormat;
 import android.os.Handler;
 import android.provider.Settings;
-import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -42,7 +40,7 @@ import android.view.WindowManager;
 import com.ceco.kitkat.gravitybox.R;
 import com.ceco.kitkat.gravitybox.pie.PieController;
 import com.ceco.kitkat.gravitybox.pie.PieLayout;
-import com.ceco.kitkat.gravitybox.pie.PieController.Position;
+import com.ceco.kitkat.gravitybox.pie.PieTriggerManager;
 
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XSharedPreferences;
@@ -72,7 +70,7 @@ public class ModPieControls {
     private static PieController mPieController;
     private static PieLayout mPieContainer;
     private static int mPieTriggerSlots;
-    private static View[] mPieTrigger = new View[PieController.Position.values().length];
+    private static PieTriggerManager mTriggerManager;
     private static Context mContext;
     private static Context mGbContext;
     private static WindowManager mWindowManager;
@@ -315,6 +313,8 @@ public class ModPieControls {
                     mPieController.setMirroredKeys(prefs.getBoolean(GravityBoxSettings.PREF_KEY_PIE_MIRRORED_KEYS, false));
 
                     mPieController.attachTo(param.thisObject);
+                    mTriggerManager = new PieTriggerManager(mContext, mWindowManager,
+                            mPieController, mPieTriggerOnTouchHandler);
 
                     IntentFilter intentFilter = new IntentFilter();
                     intentFilter.addAction(GravityBoxSettings.ACTION_PREF_PIE_CHANGED);
@@ -452,79 +452,14 @@ public class ModPieControls {
             // add or update pie triggers
             if (DEBUG) log("AttachPie with trigger position flags: " + mPieTriggerSlots);
 
-            refreshPieTriggers();
+            mTriggerManager.setTriggerSlots(mPieTriggerSlots);
+            mTriggerManager.setTriggerThickness(mPieTriggerSize);
+            mTriggerManager.setCenterTrigger(mCenterTrigger);
+            mTriggerManager.update();
 
-        } else {
-            for (int i = 0; i < mPieTrigger.length; i++) {
-                if (mPieTrigger[i] != null) {
-                    mWindowManager.removeView(mPieTrigger[i]);
-                    mPieTrigger[i] = null;
-                }
-            }
-        }
-    }
-
-    private static void refreshPieTriggers() {
-        for (Position g : Position.values()) {
-            View trigger = mPieTrigger[g.INDEX];
-            if (trigger == null && (mPieTriggerSlots & g.FLAG) != 0) {
-                trigger = new View(mContext);
-                trigger.setClickable(false);
-                trigger.setLongClickable(false);
-                trigger.setTag(mPieController.buildTracker(g));
-                trigger.setOnTouchListener(mPieTriggerOnTouchHandler);
-
-                if (DEBUG) {
-                    trigger.setVisibility(View.VISIBLE);
-                    trigger.setBackgroundColor(0x77ff0000);
-                    log("addPieTrigger on " + g.INDEX
-                            + " with position: " + g + " : " + trigger.toString());
-                }
-                mWindowManager.addView(trigger, getPieTriggerLayoutParams(g));
-                mPieTrigger[g.INDEX] = trigger;
-            } else if (trigger != null && (mPieTriggerSlots & g.FLAG) == 0) {
-                mWindowManager.removeView(trigger);
-                mPieTrigger[g.INDEX] = null;
-            } else if (trigger != null) {
-                mWindowManager.updateViewLayout(trigger, getPieTriggerLayoutParams(g));
-            }
-        }
-    }
-
-    private static WindowManager.LayoutParams getPieTriggerLayoutParams(Position position) {
-        final Resources res = mContext.getResources();
-
-        int triggerLength = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 60, 
-                res.getDisplayMetrics());
-        int width = mCenterTrigger ? triggerLength : (int) (res.getDisplayMetrics().widthPixels * 0.8f);
-        int height = mCenterTrigger ? triggerLength : (int) (res.getDisplayMetrics().heightPixels * 0.8f);
-
-        int triggerThickness = (int) TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_DIP, mPieTriggerSize, 
-                        res.getDisplayMetrics());
-        if (DEBUG) log("Pie trigger thickness: " + triggerThickness);
-        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
-                (position == Position.TOP || position == Position.BOTTOM
-                        ? width : triggerThickness),
-                (position == Position.LEFT || position == Position.RIGHT
-                        ? height : triggerThickness),
-                WindowManager.LayoutParams.TYPE_STATUS_BAR_PANEL,
-                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
-                        | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                        | WindowManager.LayoutParams.FLAG_SPLIT_TOUCH
-                        /* | WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM */,
-                PixelFormat.TRANSLUCENT);
-        // This title is for debugging only. See: dumpsys window
-        lp.setTitle("PieTrigger" + position.name());
-        if (position == Position.LEFT || position == Position.RIGHT) {
-            lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_STATE_UNCHANGED
-                    | WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE;
-        } else {
-            lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_STATE_UNCHANGED
-                    | WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING;
+        } else if (mTriggerManager != null) {
+            mTriggerManager.removeAll();
         }
-        lp.gravity = position.ANDROID_GRAVITY;
-        return lp;
     }
 
     public static void onPieSnapped(int positionFlagOrig, int positionFlagNew) {
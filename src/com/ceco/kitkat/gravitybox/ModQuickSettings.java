@@ -24,9 +24,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.ceco.kitkat.gravitybox.BatteryInfoManager.BatteryData;
 import com.ceco.kitkat.gravitybox.R;
@@ -64,12 +66,9 @@ import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.PointF;
-import android.location.LocationManager;
-import android.media.AudioManager;
 import android.net.ConnectivityManager;
 import android.os.IBinder;
 import android.provider.AlarmClock;
@@ -145,12 +144,20 @@ public class ModQuickSettings {
     private static boolean mQsSwipeEnabled;
 
     private static ArrayList<AQuickSettingsTile> mTiles;
+    private static Map<String, AQuickSettingsTile> mTilesByKey;
     private static Map<String, View> mAllTileViews;
+    private static Map<View, String> mTileViewKeys = new WeakHashMap<View, String>();
+    private static Map<String, TileFactory> mTileFactories;
+    private static LayoutInflater mInflater;
 
-    private static List<BroadcastSubReceiver> mBroadcastSubReceivers;
+    private static BroadcastRouter mBroadcastRouter = new BroadcastRouter(TAG);
 
     public static boolean hasDisableLocationConsent = false;
 
+    private interface TileFactory {
+        AQuickSettingsTile create();
+    }
+
     static {
         mCustomGbTileKeys = new ArrayList<Integer>(Arrays.asList(
             R.id.sync_tileview,
@@ -209,7 +216,9 @@ public class ModQuickSettings {
                 if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_PREFS)) {
                     mActiveTileKeys = new ArrayList<String>(Arrays.asList(
                             intent.getStringExtra(GravityBoxSettings.EXTRA_QS_PREFS).split(",")));
-                    updateTileOrderAndVisibility();
+                    // newly enabled tiles need current prefs; reloaded only if there are such
+                    final boolean tilesChanged = syncTiles(true);
+                    updateTileOrderAndVisibility(tilesChanged);
                 }
                 if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_COLS)) {
                     mNumColumns = intent.getIntExtra(GravityBoxSettings.EXTRA_QS_COLS, 3);
@@ -250,11 +259,7 @@ public class ModQuickSettings {
                 }
             }
 
-            if (mBroadcastSubReceivers != null) {
-                for (BroadcastSubReceiver bsr : mBroadcastSubReceivers) {
-                    bsr.onBroadcastReceived(context, intent);
-                }
-            }
+            mBroadcastRouter.dispatch(context, intent);
         }
     };
 
@@ -282,6 +287,10 @@ public class ModQuickSettings {
     private static String getTileKey(View view) {
         if (view == null) return null;
 
+        if (mTileViewKeys.containsKey(view)) {
+            return mTileViewKeys.get(view);
+        }
+
         String key = null;
         key = getAospTileKey(view);
 
@@ -289,49 +298,123 @@ public class ModQuickSettings {
             key = getGbTileKey(view);
         }
 
+        mTileViewKeys.put(view, key);
         return key;
     }
 
-    private static void updateTileOrderAndVisibility() {
+    // returns indices (into positions) of the longest strictly increasing subsequence
+    private static Set<Integer> findStablePositions(int[] positions) {
+        final int n = positions.length;
+        final int[] tails = new int[n];
+        final int[] prev = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (positions[tails[mid]] < positions[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) length++;
+        }
+
+        final Set<Integer> stable = new HashSet<Integer>();
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = prev[i]) {
+            stable.add(i);
+        }
+        return stable;
+    }
+
+    private static void updateTileOrderAndVisibility(boolean forceLayout) {
         if (mActiveTileKeys == null) {
             if (DEBUG) log("updateTileOrderAndVisibility: mActiveTileKeys is null - skipping");
             return;
         }
 
         try {
-            final List<View> dynamicTiles = new ArrayList<View>();
-    
+            // collect current tiles
+            // tiles that are not in our custom list might be dynamic (e.g. alarm) or some ROM specific
+            // tiles and those are kept as last in their current order
             final int tileCount = mContainerView.getChildCount();
-            for(int i = tileCount - 1; i >= 0; i--) {
+            final List<View> currentTiles = new ArrayList<View>(tileCount);
+            final List<View> dynamicTiles = new ArrayList<View>();
+            for (int i = 0; i < tileCount; i++) {
                 View view = mContainerView.getChildAt(i);
+                if (view == null) continue;
+                currentTiles.add(view);
                 final String key = getTileKey(view);
                 if (key != null) {
                     if (!mAllTileViews.containsKey(key)) {
                         mAllTileViews.put(key, view);
                     }
-                    mContainerView.removeView(view);
-                } else if (view != null) {
-                    // found tile that's not in our custom list
-                    // might be dynamic tile (e.g. alarm) or some ROM specific tile?
-                    // remove it and store it so it could be added in the end
+                } else {
                     dynamicTiles.add(view);
-                    mContainerView.removeView(view);
                 }
             }
-    
+
+            // desired order
+            final List<View> desiredTiles = new ArrayList<View>();
             for (String key : mActiveTileKeys) {
-                if (mAllTileViews.containsKey(key)) {
-                    mContainerView.addView(mAllTileViews.get(key));
+                View view = mAllTileViews.get(key);
+                if (view != null && !desiredTiles.contains(view)) {
+                    desiredTiles.add(view);
                 }
             }
-    
-            // add tiles from dynamic list as last (e.g. alarm tile we previously removed)
-            for (View v : dynamicTiles) {
-                mContainerView.addView(v);
+            desiredTiles.addAll(dynamicTiles);
+            final Map<View, Integer> desiredPositions = new HashMap<View, Integer>();
+            for (int i = 0; i < desiredTiles.size(); i++) {
+                desiredPositions.put(desiredTiles.get(i), i);
+            }
+
+            // tiles already in relative order stay in place, all the others get moved
+            final List<View> keptTiles = new ArrayList<View>();
+            for (View v : currentTiles) {
+                if (desiredPositions.containsKey(v)) {
+                    keptTiles.add(v);
+                }
+            }
+            final int[] positions = new int[keptTiles.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = desiredPositions.get(keptTiles.get(i));
+            }
+            final Set<Integer> stable = findStablePositions(positions);
+
+            int moved = 0;
+            for (View v : currentTiles) {
+                if (!desiredPositions.containsKey(v)) {
+                    mContainerView.removeViewInLayout(v);
+                    moved++;
+                }
+            }
+            for (int i = 0; i < keptTiles.size(); i++) {
+                if (!stable.contains(i)) {
+                    mContainerView.removeViewInLayout(keptTiles.get(i));
+                    moved++;
+                }
+            }
+            for (int i = 0; i < desiredTiles.size(); i++) {
+                View v = desiredTiles.get(i);
+                if (mContainerView.getChildAt(i) != v) {
+                    mContainerView.addViewInLayout(v, i, v.getLayoutParams(), true);
+                    moved++;
+                }
+            }
+            if (DEBUG) log("updateTileOrderAndVisibility: " + moved + " view operations for " +
+                    desiredTiles.size() + " tiles");
+
+            // trigger single layout refresh
+            if (moved > 0) {
+                mContainerView.requestLayout();
+                mContainerView.invalidate();
+            }
+            if (moved > 0 || forceLayout) {
+                updateTileLayout();
             }
-    
-            // trigger layout refresh
-            updateTileLayout();
         } catch (Throwable t) {
             XposedBridge.log(t);
         }
@@ -438,12 +521,13 @@ public class ModQuickSettings {
             final int tileCount = mContainerView.getChildCount();
             for(int i = 0; i < tileCount; i++) {
                 final ViewGroup viewGroup = (ViewGroup) mContainerView.getChildAt(i);
-                if (viewGroup == null || getGbTileKey(viewGroup) != null) continue;
+                if (viewGroup == null) continue;
+                final String key = getTileKey(viewGroup);
+                if (key != null && !mAospTileTags.containsKey(key)) continue;
 
                 // look for layout view and tile text view
                 View layoutView = null;
                 TextView tileTextView = null;
-                final String key = getAospTileKey(viewGroup);
                 if (Utils.isMotoXtDevice() && "wifi_textview".equals(key) && imgGroupResId != 0) {
                     layoutView = viewGroup.findViewById(imgGroupResId);
                     tileTextView = (TextView) viewGroup.findViewById(textResId);
@@ -681,19 +765,6 @@ public class ModQuickSettings {
             mGbContext = mContext.createPackageContext(GravityBox.PACKAGE_NAME, Context.CONTEXT_IGNORE_SECURITY);
             mContainerView = (ViewGroup) XposedHelpers.getObjectField(param.thisObject, "mContainerView");
             mWifiManager = new WifiManagerWrapper(mContext);
-
-            IntentFilter intentFilter = new IntentFilter(GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED);
-            intentFilter.addAction(GravityBoxSettings.ACTION_PREF_QUICKAPP_CHANGED);
-            intentFilter.addAction(GravityBoxSettings.ACTION_PREF_QUICKAPP_CHANGED_2);
-            intentFilter.addAction(GravityBoxSettings.ACTION_PREF_EXPANDED_DESKTOP_MODE_CHANGED);
-            intentFilter.addAction(AudioManager.RINGER_MODE_CHANGED_ACTION);
-            intentFilter.addAction(UsbTetherTile.ACTION_TETHER_STATE_CHANGED);
-            intentFilter.addAction(UsbTetherTile.ACTION_USB_STATE);
-            intentFilter.addAction(Intent.ACTION_MEDIA_SHARED);
-            intentFilter.addAction(UsbTetherTile.ACTION_MEDIA_UNSHARED);
-            intentFilter.addAction(LocationManager.MODE_CHANGED_ACTION);
-            intentFilter.addAction(LocationManager.PROVIDERS_CHANGED_ACTION);
-            mContext.registerReceiver(mBroadcastReceiver, intentFilter);
         }
     };
 
@@ -713,131 +784,253 @@ public class ModQuickSettings {
         }
     };
 
-    private static XC_MethodHook quickSettingsAddSystemTilesHook = new XC_MethodHook() {
-        @Override
-        protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
-            if (DEBUG) log("about to add tiles");
-
-            try {
-                LayoutInflater inflater = (LayoutInflater) param.args[1];
+    private static void registerTileFactories() {
+        mTileFactories = new LinkedHashMap<String, TileFactory>();
 
-                mTiles = new ArrayList<AQuickSettingsTile>();
-                mAllTileViews.clear();
-
-                if (Utils.hasNfc(mContext)) {
-                    NfcTile nfcTile = new NfcTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    nfcTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(nfcTile);
+        if (Utils.hasNfc(mContext)) {
+            mTileFactories.put("nfc_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new NfcTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
+            });
+        }
 
-                if (Utils.hasGPS(mContext)) {
-                    GpsTile gpsTile = new GpsTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    gpsTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(gpsTile);
+        if (Utils.hasGPS(mContext)) {
+            mTileFactories.put("gps_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new GpsTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
-
-                if (Utils.hasGPS(mContext)) {
-                    LocationTile locationTile = new LocationTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    locationTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(locationTile);
+            });
+            mTileFactories.put("location_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new LocationTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
-                
-                RingerModeTile rmTile = new RingerModeTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                rmTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(rmTile);
-
-                VolumeTile volTile = new VolumeTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                volTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(volTile);
-
-                if (!Utils.isWifiOnly(mContext)) {
-                    NetworkModeTile nmTile = new NetworkModeTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    nmTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(nmTile);
+            });
+        }
+
+        mTileFactories.put("ringer_mode_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new RingerModeTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
+
+        mTileFactories.put("volume_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new VolumeTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
+
+        if (!Utils.isWifiOnly(mContext)) {
+            mTileFactories.put("network_mode_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new NetworkModeTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
+            });
+        }
 
-                SyncTile syncTile = new SyncTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                syncTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(syncTile);
+        mTileFactories.put("sync_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new SyncTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                WifiApTile wifiApTile = new WifiApTile(mContext, mGbContext, mStatusBar, mPanelBar, mWifiManager);
-                wifiApTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(wifiApTile);
+        mTileFactories.put("wifi_ap_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new WifiApTile(mContext, mGbContext, mStatusBar, mPanelBar, mWifiManager);
+            }
+        });
 
-                if (Utils.hasFlash(mContext)) {
-                    TorchTile torchTile = new TorchTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    torchTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(torchTile);
+        if (Utils.hasFlash(mContext)) {
+            mTileFactories.put("torch_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new TorchTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
+            });
+        }
 
-                SleepTile sleepTile = new SleepTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                sleepTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(sleepTile);
+        mTileFactories.put("sleep_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new SleepTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                StayAwakeTile swTile = new StayAwakeTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                swTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(swTile);
+        mTileFactories.put("stay_awake_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new StayAwakeTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                QuickRecordTile qrTile = new QuickRecordTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                qrTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(qrTile);
+        mTileFactories.put("quickrecord_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new QuickRecordTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                QuickAppTile qAppTile = new QuickAppTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                qAppTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(qAppTile);
+        mTileFactories.put("quickapp_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new QuickAppTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                QuickAppTile qAppTile2 = new QuickAppTile(mContext, mGbContext, mStatusBar, mPanelBar, 2);
-                qAppTile2.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(qAppTile2);
+        mTileFactories.put("quickapp_tileview_2", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new QuickAppTile(mContext, mGbContext, mStatusBar, mPanelBar, 2);
+            }
+        });
 
-                ExpandedDesktopTile edTile = new ExpandedDesktopTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                edTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(edTile);
+        mTileFactories.put("expanded_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new ExpandedDesktopTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                ScreenshotTile ssTile = new ScreenshotTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                ssTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(ssTile);
+        mTileFactories.put("screenshot_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new ScreenshotTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                GravityBoxTile gbTile = new GravityBoxTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                gbTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(gbTile);
+        mTileFactories.put("gravitybox_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new GravityBoxTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                CameraTile camTile = new CameraTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                camTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(camTile);
+        mTileFactories.put("camera_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new CameraTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                UsbTetherTile utTile = new UsbTetherTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                utTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(utTile);
+        mTileFactories.put("usb_tether_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new UsbTetherTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                MusicTile musicTile = new MusicTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                musicTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(musicTile);
+        mTileFactories.put("music_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new MusicTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                if (mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SMART_RADIO_ENABLE, false)) {
-                    SmartRadioTile srTile = new SmartRadioTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    srTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(srTile);
+        if (mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SMART_RADIO_ENABLE, false)) {
+            mTileFactories.put("smart_radio_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new SmartRadioTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
+            });
+        }
 
-                LockScreenTile lsTile = new LockScreenTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                lsTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(lsTile);
+        mTileFactories.put("lock_screen_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new LockScreenTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                QuietHoursTile qhTile = new QuietHoursTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                qhTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                mTiles.add(qhTile);
+        mTileFactories.put("quiet_hours_tileview", new TileFactory() {
+            @Override
+            public AQuickSettingsTile create() {
+                return new QuietHoursTile(mContext, mGbContext, mStatusBar, mPanelBar);
+            }
+        });
 
-                if (Utils.hasCompass(mContext)) {
-                    CompassTile cTile = new CompassTile(mContext, mGbContext, mStatusBar, mPanelBar);
-                    cTile.setupQuickSettingsTile(mContainerView, inflater, mPrefs, mQuickSettings);
-                    mTiles.add(cTile);
+        if (Utils.hasCompass(mContext)) {
+            mTileFactories.put("compass_tileview", new TileFactory() {
+                @Override
+                public AQuickSettingsTile create() {
+                    return new CompassTile(mContext, mGbContext, mStatusBar, mPanelBar);
                 }
+            });
+        }
+    }
 
-                mBroadcastSubReceivers = new ArrayList<BroadcastSubReceiver>();
-                for (AQuickSettingsTile t : mTiles) {
-                    mBroadcastSubReceivers.add(t);
+    // creates tiles that are enabled and not created yet and destroys tiles that got disabled
+    // prefs are reloaded before creating first new tile if requested
+    // returns true if set of created tiles has changed
+    private static boolean syncTiles(boolean reloadPrefs) {
+        if (mTileFactories == null || mInflater == null) return false;
+
+        boolean changed = false;
+        for (Map.Entry<String, TileFactory> entry : mTileFactories.entrySet()) {
+            final String key = entry.getKey();
+            final boolean enabled = mActiveTileKeys == null || mActiveTileKeys.contains(key);
+            AQuickSettingsTile tile = mTilesByKey.get(key);
+            if (enabled && tile == null) {
+                try {
+                    if (reloadPrefs) {
+                        mPrefs.reload();
+                        reloadPrefs = false;
+                    }
+                    tile = entry.getValue().create();
+                    tile.setupQuickSettingsTile(mContainerView, mInflater, mPrefs, mQuickSettings);
+                    mTiles.add(tile);
+                    mTilesByKey.put(key, tile);
+                    mBroadcastRouter.register(tile, tile.getBroadcastActions());
+                    changed = true;
+                    if (DEBUG) log("syncTiles: created " + key);
+                } catch (Throwable t) {
+                    XposedBridge.log(t);
                 }
+            } else if (!enabled && tile != null) {
+                mTiles.remove(tile);
+                mTilesByKey.remove(key);
+                mBroadcastRouter.unregister(tile);
+                mAllTileViews.remove(key);
+                mTileViewKeys.remove(tile.getTileView());
+                tile.destroyQuickSettingsTile();
+                changed = true;
+                if (DEBUG) log("syncTiles: destroyed " + key);
+            }
+        }
+        return changed;
+    }
+
+    private static XC_MethodHook quickSettingsAddSystemTilesHook = new XC_MethodHook() {
+        @Override
+        protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
+            if (DEBUG) log("about to add tiles");
+
+            try {
+                mInflater = (LayoutInflater) param.args[1];
+                if (mTiles != null) {
+                    for (AQuickSettingsTile t : mTiles) {
+                        mBroadcastRouter.unregister(t);
+                    }
+                }
+                mTiles = new ArrayList<AQuickSettingsTile>();
+                mTilesByKey = new HashMap<String, AQuickSettingsTile>();
+                mAllTileViews.clear();
+
+                registerTileFactories();
+                syncTiles(false);
+                if (DEBUG) log("created " + mTiles.size() + " of " + mTileFactories.size() + " tiles");
+
+                // receiver filter consists of our own action and actions declared by created tiles
+                mBroadcastRouter.attach(mContext, mBroadcastReceiver,
+                        GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED);
             } catch (Throwable t) {
                 XposedBridge.log(t);
             }
@@ -847,7 +1040,7 @@ public class ModQuickSettings {
     private static XC_MethodHook qsSetupQuickSettingsHook = new XC_MethodHook() {
         @Override
         protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
-            updateTileOrderAndVisibility();
+            updateTileOrderAndVisibility(true);
         }
     };
 
@@ -15,6 +15,8 @@
 
 package com.ceco.kitkat.gravitybox;
 
+import com.ceco.kitkat.gravitybox.SmartRadioStateMachine.State;
+
 import android.app.AlarmManager;
 import android.app.KeyguardManager;
 import android.app.PendingIntent;
@@ -24,9 +26,8 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.os.Handler;
-import android.os.PowerManager;
-import android.os.PowerManager.WakeLock;
+import android.net.TrafficStats;
+import android.os.SystemClock;
 import android.provider.Settings;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XSharedPreferences;
@@ -41,27 +42,40 @@ public class ModSmartRadio {
     public static final String SETTING_SMART_RADIO_ENABLED = "gb_smart_radio_enabled";
     public static final String SETTING_SMART_RADIO_STATE = "gb_smart_radio_state";
     public static final String ACTION_TOGGLE_SMART_RADIO = "gravitybox.intent.action.TOGGLE_SMART_RADIO";
+    public static final String ACTION_GET_SMART_RADIO_STATUS = "gravitybox.intent.action.GET_SMART_RADIO_STATUS";
+    public static final String ACTION_SMART_RADIO_STATUS = "gravitybox.intent.action.SMART_RADIO_STATUS";
+    public static final String EXTRA_STATE = "smartRadioState";
+    public static final String EXTRA_TIME_NORMAL = "smartRadioTimeNormal";
+    public static final String EXTRA_TIME_POWER_SAVING = "smartRadioTimePowerSaving";
+    public static final String EXTRA_TRANSITIONS = "smartRadioTransitions";
+    public static final String EXTRA_TRANSITIONS_AVOIDED = "smartRadioTransitionsAvoided";
+    public static final String EXTRA_TRANSITIONS_DEFERRED = "smartRadioTransitionsDeferred";
+    private static final String ACTION_DEADLINE_ALARM = "gravitybox.smartradio.intent.action.DEADLINE_ALARM";
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
     }
 
-    public static enum State { UNKNOWN, NORMAL, POWER_SAVING };
-
     private static Context mContext;
     private static int mNormalMode;
     private static int mPowerSavingMode;
     private static ConnectivityManager mConnManager;
-    private static State mCurrentState = State.UNKNOWN;
+    private static SmartRadioStateMachine mStateMachine;
     private static boolean mIsScreenOff;
     private static boolean mPowerSaveWhenScreenOff;
     private static boolean mIgnoreWhileLocked;
     private static NetworkModeChanger mNetworkModeChanger;
+    private static TrafficMonitor mTrafficMonitor;
     private static int mModeChangeDelay;
     private static KeyguardManager mKeyguardManager;
     private static int mScreenOffDelay;
     private static boolean mSmartRadioEnabled;
     private static boolean mIgnoreMobileDataAvailability;
+    private static int mHysteresis;
+    private static int mMinDwell;
+    private static int mTrafficThreshold;
+    private static AlarmManager mAlarmManager;
+    private static PendingIntent mDeadlineIntent;
 
     private static BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
         @Override
@@ -88,6 +102,21 @@ public class ModSmartRadio {
                 if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_MODE_CHANGE_DELAY)) {
                     mModeChangeDelay = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_MODE_CHANGE_DELAY, 5);
                     if (DEBUG) log("mModeChangeDelay = " + mModeChangeDelay);
+                    updateTimings();
+                }
+                if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_HYSTERESIS)) {
+                    mHysteresis = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_HYSTERESIS, 0);
+                    if (DEBUG) log("mHysteresis = " + mHysteresis);
+                    updateTimings();
+                }
+                if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_MIN_DWELL)) {
+                    mMinDwell = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_MIN_DWELL, 0);
+                    if (DEBUG) log("mMinDwell = " + mMinDwell);
+                    updateTimings();
+                }
+                if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_TRAFFIC_THRESHOLD)) {
+                    mTrafficThreshold = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_TRAFFIC_THRESHOLD, 0);
+                    if (DEBUG) log("mTrafficThreshold = " + mTrafficThreshold);
                 }
                 if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_SCREEN_OFF_DELAY)) {
                     mScreenOffDelay = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_SCREEN_OFF_DELAY, 0);
@@ -105,35 +134,42 @@ public class ModSmartRadio {
                         nwType == ConnectivityManager.TYPE_MOBILE) {
                     if (DEBUG) log("Network type: " + nwType + "; connected: " + nwInfo.isConnected());
                     if (shouldSwitchToNormalState()) {
-                        switchToState(State.NORMAL);
+                        requestState(State.NORMAL);
                     } else {
-                        switchToState(State.POWER_SAVING);
+                        requestState(State.POWER_SAVING);
                     }
                 }
             } else if (intent.getAction().equals(Intent.ACTION_SCREEN_OFF)) {
                 if (DEBUG) log("Screen turning off");
                 mIsScreenOff = true;
                 if (mPowerSaveWhenScreenOff && !isTetheringViaMobileNetwork()) {
-                    switchToState(State.POWER_SAVING, true);
+                    requestState(State.POWER_SAVING, true);
                 }
             } else if (intent.getAction().equals(Intent.ACTION_SCREEN_ON)) {
                 if (DEBUG) log("Screen turning on");
                 mIsScreenOff = false;
                 if (shouldSwitchToNormalState()) {
-                    switchToState(State.NORMAL);
+                    requestState(State.NORMAL);
                 }
             } else if (intent.getAction().equals(Intent.ACTION_USER_PRESENT)) {
                 if (DEBUG) log("Keyguard unlocked");
                 if (shouldSwitchToNormalState()) {
-                    switchToState(State.NORMAL);
+                    requestState(State.NORMAL);
                 }
             } else if (intent.getAction().equals(ACTION_TOGGLE_SMART_RADIO)) {
                 toggleSmartRadio();
+            } else if (intent.getAction().equals(ACTION_GET_SMART_RADIO_STATUS)) {
+                broadcastStatus();
+            } else if (intent.getAction().equals(ACTION_DEADLINE_ALARM)) {
+                onDeadlineAlarm();
             }
 
             if (mNetworkModeChanger != null) {
                 mNetworkModeChanger.onBroadcastReceived(context, intent);
             }
+            if (mTrafficMonitor != null) {
+                mTrafficMonitor.onBroadcastReceived(context, intent);
+            }
         }
     };
 
@@ -227,23 +263,92 @@ public class ModSmartRadio {
         return shouldSwitch;
     }
 
-    private static void switchToState(State newState) {
-        switchToState(newState, false);
+    private static void requestState(State newState) {
+        requestState(newState, false);
     }
 
-    private static void switchToState(State newState, boolean force) {
+    private static void requestState(State newState, boolean force) {
         if (!mSmartRadioEnabled) {
-            if (DEBUG) log("switchToState: Smart Radio is disabled - ignoring");
-            return;
-        } else if (mCurrentState == newState && !force) {
-            if (DEBUG) log("switchToState: new state == previous state - ignoring");
+            if (DEBUG) log("requestState: Smart Radio is disabled - ignoring");
             return;
         } else if (!isMobileNetworkAvailable()) {
             // force power saving state no matter what so we start with it when mobile network is available again
-            if (DEBUG) log("switchToState: mobile network unavailable - resetting to POWER_SAVING state");
+            if (DEBUG) log("requestState: mobile network unavailable - resetting to POWER_SAVING state");
             newState = State.POWER_SAVING;
-        } else if (DEBUG) {
-            log("Switching to state: " + newState);
+        } else if (newState == State.NORMAL && mStateMachine.getState() == State.POWER_SAVING &&
+                mNetworkModeChanger.isChangePending()) {
+            // network mode wasn't changed yet so there's nothing to debounce
+            force = true;
+        } else if (newState == State.POWER_SAVING && mStateMachine.getState() == State.NORMAL &&
+                mTrafficMonitor != null && mTrafficMonitor.shouldDeferPowerSaving(force)) {
+            // keep normal state while transfer is running (also when screen turns off);
+            // monitor re-evaluates once it settles and repeats forced request if it was one
+            if (DEBUG) log("requestState: deferring POWER_SAVING due to ongoing transfer");
+            mStateMachine.defer();
+            scheduleDeadline(SystemClock.elapsedRealtime());
+            return;
+        }
+        if (mTrafficMonitor != null) {
+            mTrafficMonitor.stop();
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        if (mStateMachine.request(newState, force, now)) {
+            switchToState(mStateMachine.getState());
+        } else if (force && mStateMachine.getState() == newState) {
+            // re-apply current state e.g. to re-arm delayed power save when screen turns off
+            switchToState(newState);
+        }
+        scheduleDeadline(now);
+    }
+
+    private static void updateTimings() {
+        if (mStateMachine == null) return;
+        mStateMachine.setTimings(mModeChangeDelay*1000, mHysteresis*1000, mMinDwell*1000);
+    }
+
+    private static void scheduleDeadline(long now) {
+        cancelDeadlineAlarm();
+        final long deadline = mStateMachine.getDeadline();
+        if (deadline == -1) return;
+
+        if (DEBUG) log("scheduleDeadline: switching to " + mStateMachine.getPendingState() +
+                " in " + (deadline - now) + "ms");
+        // wakeup alarm fires also while screen is off; alarm manager keeps CPU awake during its delivery
+        mDeadlineIntent = PendingIntent.getBroadcast(mContext, 3,
+                new Intent(ACTION_DEADLINE_ALARM), PendingIntent.FLAG_ONE_SHOT);
+        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, mDeadlineIntent);
+    }
+
+    private static void cancelDeadlineAlarm() {
+        if (mDeadlineIntent != null) {
+            mAlarmManager.cancel(mDeadlineIntent);
+            mDeadlineIntent = null;
+        }
+    }
+
+    private static void onDeadlineAlarm() {
+        mDeadlineIntent = null;
+        final long now = SystemClock.elapsedRealtime();
+        if (DEBUG && mStateMachine.getDeadline() != -1) {
+            log("onDeadlineAlarm: fired " + (now - mStateMachine.getDeadline()) + "ms after deadline");
+        }
+        if (mStateMachine.getPendingState() == State.POWER_SAVING &&
+                mTrafficMonitor != null && mTrafficMonitor.shouldDeferPowerSaving(false)) {
+            if (DEBUG) log("Deferring pending POWER_SAVING due to ongoing transfer");
+            mStateMachine.defer();
+        }
+        if (mSmartRadioEnabled && mStateMachine.onDeadline(now)) {
+            switchToState(mStateMachine.getState());
+        }
+        scheduleDeadline(now);
+    }
+
+    private static void switchToState(State newState) {
+        if (DEBUG) log("Switching to state: " + newState);
+        if (newState == State.NORMAL && mTrafficMonitor != null) {
+            // traffic deciding about next step-down is measured from here
+            mTrafficMonitor.startWindow();
         }
 
         try {
@@ -253,15 +358,27 @@ public class ModSmartRadio {
                 case POWER_SAVING: networkMode = mPowerSavingMode; break;
                 default: break;
             }
-            mCurrentState = newState;
             Settings.System.putString(mContext.getContentResolver(),
-                    SETTING_SMART_RADIO_STATE, mCurrentState.toString());
+                    SETTING_SMART_RADIO_STATE, newState.toString());
             mNetworkModeChanger.changeNetworkMode(networkMode);
+            broadcastStatus();
         } catch (Throwable t) {
             log("switchToState: " + t.getMessage());
         }
     }
 
+    private static void broadcastStatus() {
+        final long now = SystemClock.elapsedRealtime();
+        Intent intent = new Intent(ACTION_SMART_RADIO_STATUS);
+        intent.putExtra(EXTRA_STATE, mStateMachine.getState().toString());
+        intent.putExtra(EXTRA_TIME_NORMAL, mStateMachine.getTimeInState(State.NORMAL, now));
+        intent.putExtra(EXTRA_TIME_POWER_SAVING, mStateMachine.getTimeInState(State.POWER_SAVING, now));
+        intent.putExtra(EXTRA_TRANSITIONS, mStateMachine.getTransitionCount());
+        intent.putExtra(EXTRA_TRANSITIONS_AVOIDED, mStateMachine.getAvoidedCount());
+        intent.putExtra(EXTRA_TRANSITIONS_DEFERRED, mStateMachine.getDeferredCount());
+        mContext.sendBroadcast(intent);
+    }
+
     private static void setNewModeValue(State state, int mode) {
         int currentMode = state == State.NORMAL ? mNormalMode : mPowerSavingMode;
         if (mode != currentMode) {
@@ -270,8 +387,9 @@ public class ModSmartRadio {
             } else {
                 mPowerSavingMode = mode;
             }
-            if (mCurrentState == state) {
-                switchToState(state, true);
+            if (mStateMachine.getState() == state) {
+                // re-applies current state honoring enabled state and mobile network availability
+                requestState(state, true);
             }
         }
     }
@@ -283,10 +401,16 @@ public class ModSmartRadio {
                     SETTING_SMART_RADIO_ENABLED, mSmartRadioEnabled ? 1 : 0);
             if (mSmartRadioEnabled) {
                 if (shouldSwitchToNormalState()) {
-                    switchToState(State.NORMAL);
+                    requestState(State.NORMAL);
                 } else {
-                    switchToState(State.POWER_SAVING);
+                    requestState(State.POWER_SAVING);
                 }
+            } else {
+                mStateMachine.cancel();
+                if (mTrafficMonitor != null) {
+                    mTrafficMonitor.stop();
+                }
+                scheduleDeadline(SystemClock.elapsedRealtime());
             }
             if (DEBUG) log("mSmartRadioEnabled=" + mSmartRadioEnabled);
         } catch (Throwable t) {
@@ -294,75 +418,63 @@ public class ModSmartRadio {
         }
     }
 
-    private static class NetworkModeChanger implements Runnable, BroadcastSubReceiver {
+    private static class NetworkModeChanger implements BroadcastSubReceiver {
         public static final String ACTION_CHANGE_MODE_ALARM = "gravitybox.smartradio.intent.action.CHANGE_MODE_ALARM";
 
         private Context mContext;
-        private Handler mHandler;
         private int mNextNetworkMode;
         private int mCurrentNetworkMode;
-        private WakeLock mWakeLock;
         private AlarmManager mAlarmManager;
         private PendingIntent mPendingIntent;
 
         public NetworkModeChanger(Context context) {
             mContext = context;
-            mHandler = new Handler();
             mNextNetworkMode = -1;
             mCurrentNetworkMode = -1;
             mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
-
-            PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-            mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "GB:SmartRadio");
         }
 
-        @Override
-        public void run() {
+        private void sendNetworkModeChange() {
             if (mContext == null || mNextNetworkMode == -1) return;
             if (DEBUG) log("NetworkModeChanger: sending intent");
             Intent intent = new Intent(PhoneWrapper.ACTION_CHANGE_NETWORK_TYPE);
             intent.putExtra(PhoneWrapper.EXTRA_NETWORK_TYPE, mNextNetworkMode);
             mContext.sendBroadcast(intent);
             mCurrentNetworkMode = mNextNetworkMode;
-            releaseWakeLockIfHeld();
         }
 
+        // mode change delay is handled by state machine debounce window
         public void changeNetworkMode(int networkMode) {
-            mHandler.removeCallbacks(this);
-            releaseWakeLockIfHeld();
             cancelPendingAlarm();
             if (networkMode == -1 || networkMode == mCurrentNetworkMode) return;
             mNextNetworkMode = networkMode;
             if (mIsScreenOff && mNextNetworkMode == mPowerSavingMode && mScreenOffDelay != 0) {
                 if (DEBUG) log("NetworkModeChanger: scheduling alarm for switching to power saving mode");
-                Intent intent = new Intent(ACTION_CHANGE_MODE_ALARM);
-                mPendingIntent = PendingIntent.getBroadcast(mContext, 1, intent, PendingIntent.FLAG_ONE_SHOT);
-                long triggerAtMillis = System.currentTimeMillis() + mScreenOffDelay*60*1000;
-                mAlarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAtMillis, mPendingIntent);
+                scheduleAlarm(mScreenOffDelay*60*1000);
             } else {
-                if (mModeChangeDelay == 0) {
-                    run();
-                } else {
-                    if (DEBUG) log("NetworkModeChanger: scheduling network mode change");
-                    if (mIsScreenOff) {
-                        mWakeLock.acquire(mModeChangeDelay*1000+1000);
-                        if (DEBUG) log("NetworkModeChanger: Wake Lock acquired");
-                    }
-                    mHandler.postDelayed(this, mModeChangeDelay*1000);
-                }
+                sendNetworkModeChange();
             }
         }
 
-        private void releaseWakeLockIfHeld() {
-            if (mWakeLock != null && mWakeLock.isHeld()) {
-                mWakeLock.release();
-                if (DEBUG) log("NetworkModeChanger: Wake Lock released");
+        private void scheduleAlarm(long delay) {
+            // traffic seen until the alarm fires decides whether power saving mode gets postponed
+            if (mTrafficMonitor != null) {
+                mTrafficMonitor.startWindow();
             }
+            Intent intent = new Intent(ACTION_CHANGE_MODE_ALARM);
+            mPendingIntent = PendingIntent.getBroadcast(mContext, 1, intent, PendingIntent.FLAG_ONE_SHOT);
+            long triggerAtMillis = System.currentTimeMillis() + delay;
+            mAlarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAtMillis, mPendingIntent);
+        }
+
+        public boolean isChangePending() {
+            return mPendingIntent != null;
         }
 
         private void cancelPendingAlarm() {
             if (mAlarmManager != null && mPendingIntent != null) {
                 mAlarmManager.cancel(mPendingIntent);
+                mPendingIntent = null;
             }
         }
 
@@ -370,8 +482,147 @@ public class ModSmartRadio {
         public void onBroadcastReceived(Context context, Intent intent) {
             if (intent.getAction().equals(ACTION_CHANGE_MODE_ALARM)) {
                 if (DEBUG) log("ACTION_CHANGE_MODE_ALARM received");
-                run();
                 mPendingIntent = null;
+                if (mNextNetworkMode == mPowerSavingMode && mTrafficMonitor != null &&
+                        mTrafficMonitor.hasTrafficInWindow()) {
+                    if (DEBUG) log("NetworkModeChanger: postponing power saving mode due to ongoing transfer");
+                    scheduleAlarm(TrafficMonitor.SAMPLE_INTERVAL);
+                    return;
+                }
+                sendNetworkModeChange();
+            }
+        }
+    }
+
+    /**
+     * Keeps radio in normal mode while there's sustained mobile data transfer or active download.
+     * Traffic is measured over a window that starts when normal state is entered (or when previous
+     * deferral ends) and is left untouched by requests evaluated within the window.
+     * Once deferring, traffic is sampled using inexact wakeup alarm until it settles.
+     */
+    private static class TrafficMonitor implements BroadcastSubReceiver {
+        public static final String ACTION_SAMPLE_ALARM = "gravitybox.smartradio.intent.action.TRAFFIC_SAMPLE_ALARM";
+        public static final long SAMPLE_INTERVAL = 15000;
+
+        private Context mContext;
+        private AlarmManager mAlarmManager;
+        private PendingIntent mPendingIntent;
+        private ThroughputEstimator mEstimator;
+        private long mWindowBytes;
+        private long mWindowStart;
+        private boolean mSampling;
+        private boolean mDownloadActive;
+        private boolean mDeferredForce;
+
+        public TrafficMonitor(Context context) {
+            mContext = context;
+            mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+            mEstimator = new ThroughputEstimator();
+            startWindow();
+        }
+
+        public void startWindow() {
+            mWindowBytes = getMobileBytes();
+            mWindowStart = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Returns true if download is active or average rate since window start reached threshold
+         */
+        public boolean hasTrafficInWindow() {
+            if (mTrafficThreshold == 0) return false;
+            if (mDownloadActive) return true;
+
+            final long elapsed = SystemClock.elapsedRealtime() - mWindowStart;
+            final long bytes = getMobileBytes() - mWindowBytes;
+            if (elapsed <= 0 || bytes <= 0) return false;
+            final long rate = bytes * 1000 / elapsed;
+            if (DEBUG) log("TrafficMonitor: window rate=" + rate + "B/s over " + elapsed + "ms");
+            return rate >= mTrafficThreshold * 1024;
+        }
+
+        public boolean shouldDeferPowerSaving(boolean force) {
+            if (mTrafficThreshold == 0) return false;
+
+            boolean defer;
+            if (!mSampling) {
+                defer = hasTrafficInWindow();
+                if (defer) {
+                    // deferral starts; follow the transfer with own samples from now on
+                    mSampling = true;
+                    mEstimator.reset();
+                    sample();
+                }
+            } else {
+                sample();
+                defer = mDownloadActive || !mEstimator.hasRate() ||
+                        mEstimator.getRate() >= mTrafficThreshold * 1024;
+            }
+            if (DEBUG) log("TrafficMonitor: rate=" + mEstimator.getRate() + "B/s; download active=" +
+                    mDownloadActive + "; defer=" + defer);
+
+            if (defer) {
+                mDeferredForce |= force;
+                scheduleSample();
+            } else {
+                stop();
+            }
+            return defer;
+        }
+
+        /**
+         * Ends deferral, if any, and starts new measurement window
+         */
+        public void stop() {
+            if (!mSampling) return;
+            if (mPendingIntent != null) {
+                mAlarmManager.cancel(mPendingIntent);
+                mPendingIntent = null;
+            }
+            mSampling = false;
+            mDeferredForce = false;
+            startWindow();
+        }
+
+        private long getMobileBytes() {
+            return TrafficStats.getMobileRxBytes() + TrafficStats.getMobileTxBytes();
+        }
+
+        private void sample() {
+            mEstimator.update(getMobileBytes(), SystemClock.elapsedRealtime());
+        }
+
+        private void scheduleSample() {
+            if (mPendingIntent != null) return;
+            mPendingIntent = PendingIntent.getBroadcast(mContext, 2,
+                    new Intent(ACTION_SAMPLE_ALARM), PendingIntent.FLAG_ONE_SHOT);
+            mAlarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                    SystemClock.elapsedRealtime() + SAMPLE_INTERVAL, mPendingIntent);
+        }
+
+        private void reevaluate() {
+            final boolean force = mDeferredForce;
+            mDeferredForce = false;
+            if (shouldSwitchToNormalState()) {
+                requestState(State.NORMAL);
+            } else {
+                requestState(State.POWER_SAVING, force);
+            }
+        }
+
+        @Override
+        public void onBroadcastReceived(Context context, Intent intent) {
+            if (intent.getAction().equals(ACTION_SAMPLE_ALARM)) {
+                mPendingIntent = null;
+                if (mSampling) {
+                    reevaluate();
+                }
+            } else if (intent.getAction().equals(ModDownloadProvider.ACTION_DOWNLOAD_STATE_CHANGED)) {
+                mDownloadActive = intent.getBooleanExtra(ModDownloadProvider.EXTRA_ACTIVE, false);
+                if (DEBUG) log("TrafficMonitor: download active=" + mDownloadActive);
+                if (!mDownloadActive && mSampling) {
+                    reevaluate();
+                }
             }
         }
     }
@@ -388,6 +639,10 @@ public class ModSmartRadio {
             mModeChangeDelay = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_MODE_CHANGE_DELAY, 5);
             mScreenOffDelay = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_SCREEN_OFF_DELAY, 0);
             mIgnoreMobileDataAvailability = prefs.getBoolean(GravityBoxSettings.PREF_KEY_SMART_RADIO_MDA_IGNORE, false);
+            mHysteresis = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_HYSTERESIS, 0);
+            mMinDwell = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_MIN_DWELL, 0);
+            mTrafficThreshold = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_TRAFFIC_THRESHOLD, 0);
+            mStateMachine = new SmartRadioStateMachine(mModeChangeDelay*1000, mHysteresis*1000, mMinDwell*1000);
 
             XposedHelpers.findAndHookMethod(classSystemUIService, "onCreate", new XC_MethodHook() {
                 @Override
@@ -401,8 +656,10 @@ public class ModSmartRadio {
                         mConnManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
                         mKeyguardManager = (KeyguardManager) mContext.getSystemService(Context.KEYGUARD_SERVICE);
                         mNetworkModeChanger = new NetworkModeChanger(mContext);
+                        mTrafficMonitor = new TrafficMonitor(mContext);
+                        mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
                         Settings.System.putString(mContext.getContentResolver(), 
-                                SETTING_SMART_RADIO_STATE, mCurrentState.toString());
+                                SETTING_SMART_RADIO_STATE, mStateMachine.getState().toString());
 
                         IntentFilter intentFilter = new IntentFilter();
                         intentFilter.addAction(GravityBoxSettings.ACTION_PREF_SMART_RADIO_CHANGED);
@@ -412,6 +669,10 @@ public class ModSmartRadio {
                         intentFilter.addAction(Intent.ACTION_USER_PRESENT);
                         intentFilter.addAction(NetworkModeChanger.ACTION_CHANGE_MODE_ALARM);
                         intentFilter.addAction(ACTION_TOGGLE_SMART_RADIO);
+                        intentFilter.addAction(ACTION_GET_SMART_RADIO_STATUS);
+                        intentFilter.addAction(ACTION_DEADLINE_ALARM);
+                        intentFilter.addAction(TrafficMonitor.ACTION_SAMPLE_ALARM);
+                        intentFilter.addAction(ModDownloadProvider.ACTION_DOWNLOAD_STATE_CHANGED);
                         mContext.registerReceiver(mBroadcastReceiver, intentFilter);
                     }
                 }
@@ -17,8 +17,6 @@ package com.ceco.kitkat.gravitybox;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
 
 import com.ceco.kitkat.gravitybox.TrafficMeterAbstract.TrafficMeterMode;
 
@@ -40,7 +38,6 @@ import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.content.res.XModuleResources;
 import android.content.res.XResources;
@@ -147,7 +144,7 @@ public class ModStatusBar {
     private static int mInitialTouchY;
     private static int BRIGHTNESS_ON = 255;
 
-    private static List<BroadcastSubReceiver> mBroadcastSubReceivers = new ArrayList<BroadcastSubReceiver>();
+    private static BroadcastRouter mBroadcastRouter = new BroadcastRouter(TAG);
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -159,9 +156,7 @@ public class ModStatusBar {
         public void onReceive(Context context, Intent intent) {
             if (DEBUG) log("Broadcast received: " + intent.toString());
 
-            for (BroadcastSubReceiver bsr : mBroadcastSubReceivers) {
-                bsr.onBroadcastReceived(context, intent);
-            }
+            mBroadcastRouter.dispatch(context, intent);
 
             if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_CLOCK_CHANGED)) {
                 if (intent.hasExtra(GravityBoxSettings.EXTRA_CENTER_CLOCK)) {
@@ -307,7 +302,7 @@ public class ModStatusBar {
                             mClock = new StatusbarClock(prefs);
                             mClock.setClock(clock);
                             ModStatusbarColor.registerIconManagerListener(mClock);
-                            mBroadcastSubReceivers.add(mClock);
+                            mBroadcastRouter.register(mClock, GravityBoxSettings.ACTION_PREF_CLOCK_CHANGED);
                             // find notification panel clock
                             final ViewGroup panelHolder = (ViewGroup) liparam.view.findViewById(
                                     liparam.res.getIdentifier("panel_holder", "id", PACKAGE_NAME));
@@ -471,20 +466,19 @@ public class ModStatusBar {
                         XposedBridge.log(t);
                     }
 
-                    IntentFilter intentFilter = new IntentFilter();
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_CLOCK_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_STATUSBAR_BRIGHTNESS_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_ONGOING_NOTIFICATIONS_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_DATA_TRAFFIC_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_DISABLE_DATA_NETWORK_TYPE_ICONS_CHANGED);
-                    intentFilter.addAction(ACTION_START_SEARCH_ASSIST);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_NOTIF_CARRIER_TEXT_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_NOTIF_CARRIER2_TEXT_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_NOTIF_EXPAND_ALL_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_STATUSBAR_DT2S_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_STATUSBAR_BT_VISIBILITY_CHANGED);
-                    intentFilter.addAction(ACTION_DELETE_SCREENSHOT);
-                    mContext.registerReceiver(mBroadcastReceiver, intentFilter);
+                    // actions handled here; sub-receivers add their own declared actions
+                    mBroadcastRouter.attach(mContext, mBroadcastReceiver,
+                            GravityBoxSettings.ACTION_PREF_CLOCK_CHANGED,
+                            GravityBoxSettings.ACTION_PREF_STATUSBAR_BRIGHTNESS_CHANGED,
+                            GravityBoxSettings.ACTION_PREF_ONGOING_NOTIFICATIONS_CHANGED,
+                            GravityBoxSettings.ACTION_PREF_DATA_TRAFFIC_CHANGED,
+                            GravityBoxSettings.ACTION_DISABLE_DATA_NETWORK_TYPE_ICONS_CHANGED,
+                            ACTION_START_SEARCH_ASSIST,
+                            GravityBoxSettings.ACTION_NOTIF_CARRIER_TEXT_CHANGED,
+                            GravityBoxSettings.ACTION_NOTIF_CARRIER2_TEXT_CHANGED,
+                            GravityBoxSettings.ACTION_NOTIF_EXPAND_ALL_CHANGED,
+                            GravityBoxSettings.ACTION_PREF_STATUSBAR_DT2S_CHANGED,
+                            ACTION_DELETE_SCREENSHOT);
 
                     mSettingsObserver = new SettingsObserver(
                             (Handler) XposedHelpers.getObjectField(mPhoneStatusBar, "mHandler"));
@@ -839,7 +833,8 @@ public class ModStatusBar {
             }
 
             // Status bar Bluetooth icon policy
-            mBroadcastSubReceivers.add(new StatusbarBluetoothIcon(classLoader, prefs));
+            mBroadcastRouter.register(new StatusbarBluetoothIcon(classLoader, prefs),
+                    GravityBoxSettings.ACTION_PREF_STATUSBAR_BT_VISIBILITY_CHANGED);
 
             // Delete action for screenshot notification
             try {
@@ -951,9 +946,7 @@ public class ModStatusBar {
 
         removeTrafficMeterView();
         if (mTrafficMeter != null) {
-            if (mBroadcastSubReceivers.contains(mTrafficMeter)) {
-                mBroadcastSubReceivers.remove(mTrafficMeter);
-            }
+            mBroadcastRouter.unregister(mTrafficMeter);
             ModStatusbarColor.unregisterIconManagerListener(mTrafficMeter);
             mTrafficMeter = null;
         }
@@ -963,7 +956,7 @@ public class ModStatusBar {
             mTrafficMeter.initialize(mPrefs);
             updateTrafficMeterPosition();
             ModStatusbarColor.registerIconManagerListener(mTrafficMeter);
-            mBroadcastSubReceivers.add(mTrafficMeter);
+            mBroadcastRouter.register(mTrafficMeter, GravityBoxSettings.ACTION_PREF_DATA_TRAFFIC_CHANGED);
         }
     }
 
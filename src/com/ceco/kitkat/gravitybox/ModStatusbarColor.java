@@ -16,8 +16,6 @@
 package com.ceco.kitkat.gravitybox;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
 
 import com.ceco.kitkat.gravitybox.StatusBarIconManager.ColorInfo;
 import com.ceco.kitkat.gravitybox.StatusBarIconManager.IconManagerListener;
@@ -25,7 +23,6 @@ import com.ceco.kitkat.gravitybox.StatusBarIconManager.IconManagerListener;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.Color;
 import android.graphics.PixelFormat;
 import android.graphics.drawable.Drawable;
@@ -60,7 +57,7 @@ public class ModStatusbarColor {
 
     private static View mPanelBar;
     private static StatusBarIconManager mIconManager;
-    private static List<BroadcastSubReceiver> mBroadcastSubReceivers;
+    private static BroadcastRouter mBroadcastRouter;
     private static Object mPhoneStatusBar;
     private static StatusbarSignalCluster mSignalCluster;
     private static int mStatusbarBgColor;
@@ -99,9 +96,7 @@ public class ModStatusbarColor {
                 }
             }
 
-            for (BroadcastSubReceiver bsr : mBroadcastSubReceivers) {
-                bsr.onBroadcastReceived(context, intent);
-            }
+            mBroadcastRouter.dispatch(context, intent);
         }
     };
 
@@ -116,7 +111,7 @@ public class ModStatusbarColor {
             final Class<?> sbTransitionsClass = XposedHelpers.findClass(CLASS_SB_TRANSITIONS, classLoader);
             final Class<?> barTransitionsClass = XposedHelpers.findClass(CLASS_BAR_TRANSITIONS, classLoader);
 
-            mBroadcastSubReceivers = new ArrayList<BroadcastSubReceiver>();
+            mBroadcastRouter = new BroadcastRouter(TAG);
 
             XposedBridge.hookAllConstructors(phoneStatusbarViewClass, new XC_MethodHook() {
 
@@ -124,17 +119,21 @@ public class ModStatusbarColor {
                 protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
                     mPanelBar = (View) param.thisObject;
 
-                    IntentFilter intentFilter = new IntentFilter();
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_STATUSBAR_COLOR_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_NOTIF_BACKGROUND_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_DISABLE_ROAMING_INDICATORS_CHANGED);
-                    intentFilter.addAction(Intent.ACTION_BATTERY_CHANGED);
-                    intentFilter.addAction(GravityBoxSettings.ACTION_PREF_BATTERY_CHARGED_SOUND_CHANGED);
-                    mPanelBar.getContext().registerReceiver(mBroadcastReceiver, intentFilter);
+                    // sub-receivers are created later so register all their actions up front
+                    // to avoid re-registration (and sticky battery broadcast being delivered again)
+                    mBroadcastRouter.attach(mPanelBar.getContext(), mBroadcastReceiver,
+                            GravityBoxSettings.ACTION_PREF_STATUSBAR_COLOR_CHANGED,
+                            GravityBoxSettings.ACTION_NOTIF_BACKGROUND_CHANGED,
+                            GravityBoxSettings.ACTION_DISABLE_ROAMING_INDICATORS_CHANGED,
+                            Intent.ACTION_BATTERY_CHANGED,
+                            GravityBoxSettings.ACTION_PREF_BATTERY_CHARGED_SOUND_CHANGED);
 
                     Context gbContext = mPanelBar.getContext().createPackageContext(GravityBox.PACKAGE_NAME,
                             Context.CONTEXT_IGNORE_SECURITY);
                     mIconManager = new StatusBarIconManager(mPanelBar.getContext(), gbContext);
+                    mIconManager.beginUpdate();
+                    mIconManager.setPrerenderEnabled(prefs.getBoolean(
+                            GravityBoxSettings.PREF_KEY_STATUSBAR_ICON_PRERENDER, false));
                     mIconManager.setIconColor(
                             prefs.getInt(GravityBoxSettings.PREF_KEY_STATUSBAR_ICON_COLOR,
                                     mIconManager.getDefaultIconColor()));
@@ -165,11 +164,15 @@ public class ModStatusbarColor {
                     }
                     mIconManager.setColoringEnabled(prefs.getBoolean(
                             GravityBoxSettings.PREF_KEY_STATUSBAR_ICON_COLOR_ENABLE, false));
+                    mIconManager.endUpdate();
                     mIconManager.getBatteryInfoManager().setChargedSoundEnabled(prefs.getBoolean(
                             GravityBoxSettings.PREF_KEY_BATTERY_CHARGED_SOUND, false));
                     mIconManager.getBatteryInfoManager().setPluggedSoundEnabled(prefs.getBoolean(
                             GravityBoxSettings.PREF_KEY_CHARGER_PLUGGED_SOUND, false));
-                    mBroadcastSubReceivers.add(mIconManager);
+                    mBroadcastRouter.register(mIconManager,
+                            GravityBoxSettings.ACTION_PREF_STATUSBAR_COLOR_CHANGED,
+                            Intent.ACTION_BATTERY_CHANGED,
+                            GravityBoxSettings.ACTION_PREF_BATTERY_CHARGED_SOUND_CHANGED);
                 }
             });
 
@@ -180,7 +183,8 @@ public class ModStatusbarColor {
                     LinearLayout view = (LinearLayout) param.thisObject;
                     if (mSignalCluster == null) {
                         mSignalCluster = StatusbarSignalCluster.create(view, mIconManager, prefs);
-                        mBroadcastSubReceivers.add(mSignalCluster);
+                        mBroadcastRouter.register(mSignalCluster,
+                                GravityBoxSettings.ACTION_DISABLE_ROAMING_INDICATORS_CHANGED);
                         if (DEBUG) log("SignalClusterView constructed - mSignalClusterView set");
                     }
                 }
@@ -223,7 +227,7 @@ public class ModStatusbarColor {
                 protected void afterHookedMethod(MethodHookParam param) throws Throwable {
                     NotificationWallpaper nw = 
                             new NotificationWallpaper((FrameLayout) param.thisObject, prefs);
-                    mBroadcastSubReceivers.add(nw);
+                    mBroadcastRouter.register(nw, GravityBoxSettings.ACTION_NOTIF_BACKGROUND_CHANGED);
                 }
             });
 
@@ -16,12 +16,15 @@
 
 package com.ceco.kitkat.gravitybox;
 
-import static de.robv.android.xposed.XposedHelpers.callMethod;
 import static de.robv.android.xposed.XposedHelpers.findAndHookMethod;
 import static de.robv.android.xposed.XposedHelpers.findClass;
 import static de.robv.android.xposed.XposedHelpers.getAdditionalInstanceField;
 import static de.robv.android.xposed.XposedHelpers.getObjectField;
 import static de.robv.android.xposed.XposedHelpers.setAdditionalInstanceField;
+import java.lang.reflect.Method;
+
+import com.ceco.kitkat.gravitybox.KeyInterceptionPipeline.KeyContext;
+
 import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
@@ -30,6 +33,7 @@ import android.os.SystemClock;
 import android.view.KeyEvent;
 import android.view.ViewConfiguration;
 import de.robv.android.xposed.XC_MethodHook;
+import de.robv.android.xposed.XC_MethodHook.MethodHookParam;
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 
@@ -39,6 +43,8 @@ public class ModVolumeKeySkipTrack {
 
     private static boolean mIsLongPress = false;
     private static boolean allowSkipTrack; 
+    private static Object mAudioService;
+    private static Method mDispatchMediaKeyEvent;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -63,30 +69,29 @@ public class ModVolumeKeySkipTrack {
                 }
             });
 
-            findAndHookMethod(classPhoneWindowManager, "interceptKeyBeforeQueueing",
-                    KeyEvent.class, int.class, boolean.class, handleInterceptKeyBeforeQueueing);
+            KeyInterceptionPipeline.addHandler("volumeskiptrack",
+                    KeyInterceptionPipeline.ORDER_VOLUME_SKIP_TRACK, mKeyHandler);
         } catch (Throwable t) { XposedBridge.log(t); }
     }
 
-    private static XC_MethodHook handleInterceptKeyBeforeQueueing = new XC_MethodHook() {
+    private static KeyInterceptionPipeline.KeyHandler mKeyHandler = new KeyInterceptionPipeline.KeyHandler() {
         @Override
-        protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
-            final boolean isScreenOn = (Boolean) param.args[2];
-            if (!isScreenOn && allowSkipTrack) { 
-                final KeyEvent event = (KeyEvent) param.args[0];
-                final int keyCode = event.getKeyCode();
+        public boolean onInterceptKeyBeforeQueueing(KeyContext ctx) throws Throwable {
+            final MethodHookParam param = ctx.param;
+            if (!ctx.isScreenOn && allowSkipTrack) { 
+                final int keyCode = ctx.keyCode;
                 if ((keyCode == KeyEvent.KEYCODE_VOLUME_DOWN || keyCode == KeyEvent.KEYCODE_VOLUME_UP)
-                        && (Boolean) callMethod(param.thisObject, "isMusicActive") == true) {
-                    if (event.getAction() == KeyEvent.ACTION_DOWN) {
+                        && ctx.isMusicActive()) {
+                    if (ctx.down) {
                         mIsLongPress = false;
                         handleVolumeLongPress(param.thisObject, keyCode);
-                        param.setResult(0);
-                        return;
+                        ctx.consume();
+                        return true;
                     } else {
                         handleVolumeLongPressAbort(param.thisObject);
                         if (mIsLongPress) {
-                            param.setResult(0);
-                            return;
+                            ctx.consume();
+                            return true;
                         }
 
                         // send an additional "key down" because the first one was eaten
@@ -99,6 +104,7 @@ public class ModVolumeKeySkipTrack {
                     }
                 }
             }
+            return false;
         }
     };
 
@@ -164,21 +170,25 @@ public class ModVolumeKeySkipTrack {
      */
     private static void dispatchMediaButtonEvent(KeyEvent keyEvent) {
         try {
-            IBinder iBinder = (IBinder) Class.forName("android.os.ServiceManager")
-                    .getDeclaredMethod("checkService", String.class)
-                    .invoke(null, Context.AUDIO_SERVICE);
-            if (DEBUG ) log("Got Binder");
-
-            // get audioService from IAudioService.Stub.asInterface(IBinder)
-            Object audioService  = Class.forName("android.media.IAudioService$Stub")
-                    .getDeclaredMethod("asInterface",IBinder.class)
-                    .invoke(null,iBinder);
+            if (mAudioService == null) {
+                IBinder iBinder = (IBinder) Class.forName("android.os.ServiceManager")
+                        .getDeclaredMethod("checkService", String.class)
+                        .invoke(null, Context.AUDIO_SERVICE);
+                if (DEBUG ) log("Got Binder");
+
+                // get audioService from IAudioService.Stub.asInterface(IBinder)
+                mAudioService = Class.forName("android.media.IAudioService$Stub")
+                        .getDeclaredMethod("asInterface",IBinder.class)
+                        .invoke(null,iBinder);
+                mDispatchMediaKeyEvent = Class.forName("android.media.IAudioService")
+                        .getDeclaredMethod("dispatchMediaKeyEvent",KeyEvent.class);
+            }
 
             // Dispatch keyEvent using IAudioService.dispatchMediaKeyEvent(KeyEvent)
-            Class.forName("android.media.IAudioService")
-                    .getDeclaredMethod("dispatchMediaKeyEvent",KeyEvent.class)
-                    .invoke(audioService, keyEvent);
+            mDispatchMediaKeyEvent.invoke(mAudioService, keyEvent);
         } catch (Throwable t) {
+            // drop cached proxy so that it's obtained again next time e.g. after audio service restart
+            mAudioService = null;
             XposedBridge.log(t);
         }
     }
@@ -28,6 +28,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.View.OnClickListener;
@@ -35,7 +36,6 @@ import android.view.animation.AccelerateInterpolator;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import de.robv.android.xposed.XC_MethodHook;
-import de.robv.android.xposed.XC_MethodHook.Unhook;
 import de.robv.android.xposed.XC_MethodReplacement;
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
@@ -47,7 +47,6 @@ public class ModVolumePanel {
     private static final String CLASS_VOLUME_PANEL = "android.view.VolumePanel";
     private static final String CLASS_STREAM_CONTROL = "android.view.VolumePanel$StreamControl";
     private static final String CLASS_AUDIO_SERVICE = "android.media.AudioService";
-    private static final String CLASS_VIEW_GROUP = "android.view.ViewGroup";
     private static final boolean DEBUG = false;
 
     private static final int STREAM_RING = 2;
@@ -58,7 +57,6 @@ public class ModVolumePanel {
 
     private static Object mVolumePanel;
     private static boolean mVolumesLinked;
-    private static Unhook mViewGroupAddViewHook;
     private static boolean mVolumeAdjustMuted;
     private static boolean mVolumeAdjustVibrateMuted;
     private static boolean mExpandable;
@@ -145,7 +143,6 @@ public class ModVolumePanel {
         try {
             final Class<?> classVolumePanel = XposedHelpers.findClass(CLASS_VOLUME_PANEL, classLoader);
             final Class<?> classStreamControl = XposedHelpers.findClass(CLASS_STREAM_CONTROL, classLoader);
-            final Class<?> classViewGroup = XposedHelpers.findClass(CLASS_VIEW_GROUP, classLoader);
 
             mVolumeAdjustMuted = prefs.getBoolean(GravityBoxSettings.PREF_KEY_VOLUME_ADJUST_MUTE, false);
             mVolumeAdjustVibrateMuted = prefs.getBoolean(GravityBoxSettings.PREF_KEY_VOLUME_ADJUST_VIBRATE_MUTE, false);
@@ -267,35 +264,37 @@ public class ModVolumePanel {
             }
 
             // Samsung bug workaround
-            XposedHelpers.findAndHookMethod(classVolumePanel, "addOtherVolumes", new XC_MethodHook() {
-                @Override
-                protected void beforeHookedMethod(final MethodHookParam param) throws Throwable {
-                    if (DEBUG) log("addOtherVolumes: hooking ViewGroup.addViewInner");
-
-                    mViewGroupAddViewHook = XposedHelpers.findAndHookMethod(classViewGroup, "addViewInner", 
-                            View.class, int.class, ViewGroup.LayoutParams.class, 
-                            boolean.class, new XC_MethodHook() {
-                        @Override
-                        protected void beforeHookedMethod(final MethodHookParam param2) throws Throwable {
-                            if (DEBUG) log("ViewGroup.addViewInner called from VolumePanel.addOtherVolumes()");
-                            View child = (View) param2.args[0];
-                            if (child.getParent() != null) {
-                                if (DEBUG) log("Ignoring addView for child: " + child.toString());
-                                param2.setResult(null);
-                                return;
+            // Stream controls created by createSliders() are kept in mStreamControls and reused
+            // on every expand. Detach pooled slider groups before they get re-attached so that
+            // addView never sees a child which already has a parent.
+            try {
+                final Field fldStreamControls = XposedHelpers.findField(classVolumePanel, "mStreamControls");
+                final Field fldSliderGroup = XposedHelpers.findField(classVolumePanel, "mSliderGroup");
+                final Field fldActiveStreamType = XposedHelpers.findField(classVolumePanel, "mActiveStreamType");
+                final Field fldGroup = XposedHelpers.findField(classStreamControl, "group");
+                XposedHelpers.findAndHookMethod(classVolumePanel, "addOtherVolumes", new XC_MethodHook() {
+                    @Override
+                    protected void beforeHookedMethod(final MethodHookParam param) throws Throwable {
+                        final long start = DEBUG ? SystemClock.elapsedRealtimeNanos() : 0;
+                        final Map<?, ?> streamControls = (Map<?, ?>) fldStreamControls.get(param.thisObject);
+                        final ViewGroup sliderGroup = (ViewGroup) fldSliderGroup.get(param.thisObject);
+                        if (streamControls == null || sliderGroup == null) return;
+
+                        final int activeStreamType = fldActiveStreamType.getInt(param.thisObject);
+                        for (Map.Entry<?, ?> entry : streamControls.entrySet()) {
+                            if ((Integer) entry.getKey() == activeStreamType) continue;
+                            final View group = (View) fldGroup.get(entry.getValue());
+                            if (group != null && group.getParent() instanceof ViewGroup) {
+                                ((ViewGroup) group.getParent()).removeView(group);
                             }
                         }
-                    });
-                }
-                @Override
-                protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
-                    if (mViewGroupAddViewHook != null) {
-                        if (DEBUG) log("addOtherVolumes: unhooking ViewGroup.addViewInner");
-                        mViewGroupAddViewHook.unhook();
-                        mViewGroupAddViewHook = null;
+                        if (DEBUG) log("addOtherVolumes: pooled sliders detached in " +
+                                (SystemClock.elapsedRealtimeNanos() - start) / 1000 + "us");
                     }
-                }
-            });
+                });
+            } catch (Throwable t) {
+                XposedBridge.log(t);
+            }
 
             XposedHelpers.findAndHookMethod(classVolumePanel, "onPlaySound",
                     int.class, int.class, new XC_MethodHook() {
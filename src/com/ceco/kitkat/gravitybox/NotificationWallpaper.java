@@ -16,8 +16,6 @@
 
 package com.ceco.kitkat.gravitybox;
 
-import java.io.File;
-
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 
@@ -26,7 +24,6 @@ import android.content.Intent;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
@@ -39,7 +36,8 @@ import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
 
-class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver {
+class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver,
+                                                            NotificationWallpaperProvider.WallpaperListener {
     private static final String PACKAGE_NAME = "com.android.systemui";
     private static final String TAG = "GB:NotificationWallpaper";
 
@@ -52,7 +50,7 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
     private String mColorMode;
     private float mAlpha;
     private Context mContext;
-    Bitmap mBitmapWallpaper = null;
+    private NotificationWallpaperProvider mWallpaperProvider;
 
     public NotificationWallpaper(FrameLayout container, XSharedPreferences prefs) {
         super(container.getContext());
@@ -68,6 +66,8 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
             mNotifBgImagePathLandscape = "";
             XposedBridge.log(e);
         }
+        mWallpaperProvider = new NotificationWallpaperProvider(mContext,
+                mNotifBgImagePathPortrait, mNotifBgImagePathLandscape);
 
         mBgType = GravityBoxSettings.NOTIF_BG_DEFAULT;
         mColorMode = GravityBoxSettings.NOTIF_BG_COLOR_MODE_OVERLAY;
@@ -89,6 +89,9 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
                 GravityBoxSettings.PREF_KEY_NOTIF_BACKGROUND_ALPHA, 0));
         mNotificationPanelView.addView(this);
         updateNotificationPanelBackground();
+        if (mBgType.equals(GravityBoxSettings.NOTIF_BG_IMAGE)) {
+            mWallpaperProvider.refresh(this);
+        }
     }
 
     public String getType() {
@@ -144,16 +147,12 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
     }
 
     private void updateNotificationWallpaper() {
-        if (mNotificationWallpaperImage != null) {
-            removeView(mNotificationWallpaperImage);
-            mNotificationWallpaperImage = null;
+        if (mBgType.equals(GravityBoxSettings.NOTIF_BG_DEFAULT)) {
+            removeWallpaperImage();
+            return;
         }
 
-        if (mBgType.equals(GravityBoxSettings.NOTIF_BG_DEFAULT)) return;
-
         boolean isLandscape = false;
-        File file = new File(mNotifBgImagePathPortrait);
-        File fileLandscape = new File(mNotifBgImagePathLandscape);
         Display display = ((WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
         int orientation = display.getRotation();
         switch(orientation) {
@@ -168,21 +167,21 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
         }
 
         Drawable d = null;
-        if (mBgType.equals(GravityBoxSettings.NOTIF_BG_IMAGE) && file.exists()) {
-            
-            if (isLandscape && fileLandscape.exists()) {
-                mBitmapWallpaper = BitmapFactory.decodeFile(mNotifBgImagePathLandscape);
-            } else {
-                mBitmapWallpaper = BitmapFactory.decodeFile(mNotifBgImagePathPortrait);
-            }
-            if (mBitmapWallpaper != null) {
-                d = new BitmapDrawable(getResources(), mBitmapWallpaper);
+        if (mBgType.equals(GravityBoxSettings.NOTIF_BG_IMAGE)) {
+            // wallpapers are prepared by provider for both orientations; we just pick the right one
+            Bitmap bitmap = mWallpaperProvider.getWallpaper(isLandscape);
+            if (bitmap != null) {
+                d = new BitmapDrawable(getResources(), bitmap);
             }
         } else if (mBgType.equals(GravityBoxSettings.NOTIF_BG_COLOR)) {
             d = new ColorDrawable();
             ((ColorDrawable)d).setColor(mColor);
         }
 
+        if (d == null || !mColorMode.equals(GravityBoxSettings.NOTIF_BG_COLOR_MODE_OVERLAY)) {
+            removeWallpaperImage();
+        }
+
         if (d != null) {
             d.setAlpha(mAlpha == 0 ? 255 : (int) ((1-mAlpha) * 255));
             if (mColorMode.equals(GravityBoxSettings.NOTIF_BG_COLOR_MODE_UNDERLAY)) {
@@ -191,26 +190,26 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
                     ((FrameLayout)parent).setBackground(d);
                 }
             } else if (mColorMode.equals(GravityBoxSettings.NOTIF_BG_COLOR_MODE_OVERLAY)) {
-                mNotificationWallpaperImage = new ImageView(getContext());
-                if (mBgType.equals(GravityBoxSettings.NOTIF_BG_IMAGE) &&
-                        isLandscape && !fileLandscape.exists()) {
-                    mNotificationWallpaperImage.setScaleType(ScaleType.CENTER_CROP);
-                } else {
+                if (mNotificationWallpaperImage == null) {
+                    mNotificationWallpaperImage = new ImageView(getContext());
                     mNotificationWallpaperImage.setScaleType(ScaleType.CENTER);
+                    addView(mNotificationWallpaperImage, -1, -1);
                 }
                 mNotificationWallpaperImage.setImageDrawable(d);
-                addView(mNotificationWallpaperImage, -1, -1);
             }
         }
     }
 
-    @Override
-    protected void onDetachedFromWindow() {
-        if (mBitmapWallpaper != null)
-            mBitmapWallpaper.recycle();
+    private void removeWallpaperImage() {
+        if (mNotificationWallpaperImage != null) {
+            removeView(mNotificationWallpaperImage);
+            mNotificationWallpaperImage = null;
+        }
+    }
 
-        System.gc();
-        super.onDetachedFromWindow();
+    @Override
+    public void onWallpaperLoaded() {
+        updateNotificationWallpaper();
     }
 
     @Override
@@ -235,6 +234,10 @@ class NotificationWallpaper extends FrameLayout implements BroadcastSubReceiver
                 setColorMode(intent.getStringExtra(GravityBoxSettings.EXTRA_BG_COLOR_MODE));
             }
             updateNotificationPanelBackground();
+            if (mBgType.equals(GravityBoxSettings.NOTIF_BG_IMAGE)) {
+                // image might have been changed
+                mWallpaperProvider.refresh(this);
+            }
         }
     }
 }
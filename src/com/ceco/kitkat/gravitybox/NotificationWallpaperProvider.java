@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.robv.android.xposed.XposedBridge;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.AsyncTask;
+import android.util.DisplayMetrics;
+
+/**
+ * Keeps notification shade wallpaper prepared for both orientations so that rotation
+ * only swaps bitmaps. Images are decoded in background, scaled to exact screen size
+ * for given orientation and stored as RGB_565 when opaque. Decoding is repeated only
+ * when modification time of any of the source files changes.
+ */
+public class NotificationWallpaperProvider {
+    private static final String TAG = "GB:NotificationWallpaperProvider";
+    private static final boolean DEBUG = false;
+
+    public interface WallpaperListener {
+        void onWallpaperLoaded();
+    }
+
+    private String mPathPortrait;
+    private String mPathLandscape;
+    private Bitmap mPortrait;
+    private Bitmap mLandscape;
+    private long mPortraitModified;
+    private long mLandscapeModified;
+    private int mShortSide;
+    private int mLongSide;
+    private AsyncTask<Void, Void, Void> mLoadTask;
+    private List<WallpaperListener> mListeners;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    public NotificationWallpaperProvider(Context context, String pathPortrait, String pathLandscape) {
+        mPathPortrait = pathPortrait;
+        mPathLandscape = pathLandscape;
+        mListeners = new ArrayList<WallpaperListener>();
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        mShortSide = Math.min(dm.widthPixels, dm.heightPixels);
+        mLongSide = Math.max(dm.widthPixels, dm.heightPixels);
+    }
+
+    /**
+     * Returns wallpaper prepared for given orientation or null if there is none (yet).
+     * Never performs disk I/O; use refresh() to revalidate cached wallpapers.
+     */
+    public Bitmap getWallpaper(boolean landscape) {
+        return landscape ? mLandscape : mPortrait;
+    }
+
+    /**
+     * Revalidates cached wallpapers in background.
+     * Listener, if any, is notified on UI thread once the (possibly unchanged) wallpapers are available.
+     */
+    public void refresh(WallpaperListener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+        if (mLoadTask != null) return;
+
+        mLoadTask = new AsyncTask<Void, Void, Void>() {
+            private long mNewPortraitModified;
+            private long mNewLandscapeModified;
+            private Bitmap mNewPortrait;
+            private Bitmap mNewLandscape;
+
+            @Override
+            protected Void doInBackground(Void... args) {
+                try {
+                    mNewPortraitModified = getModified(mPathPortrait);
+                    mNewLandscapeModified = getModified(mPathLandscape);
+                    if (mNewPortraitModified == 0) {
+                        // landscape image is used only together with portrait one
+                        mNewLandscapeModified = 0;
+                        return null;
+                    }
+                    if (mNewPortraitModified == mPortraitModified &&
+                            mNewLandscapeModified == mLandscapeModified) {
+                        return null;
+                    }
+
+                    mNewPortrait = decodeWallpaper(mPathPortrait, mShortSide, mLongSide);
+                    // portrait image gets center-cropped when there's no dedicated landscape one
+                    mNewLandscape = decodeWallpaper(mNewLandscapeModified != 0 ?
+                            mPathLandscape : mPathPortrait, mLongSide, mShortSide);
+                    if (DEBUG) log("Wallpapers decoded: portrait=" + mNewPortrait +
+                            "; landscape=" + mNewLandscape);
+                } catch (Throwable t) {
+                    XposedBridge.log(t);
+                }
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void args) {
+                if (mNewPortraitModified == 0) {
+                    mPortrait = null;
+                    mLandscape = null;
+                    mPortraitModified = 0;
+                    mLandscapeModified = 0;
+                } else if (mNewPortrait != null) {
+                    mPortrait = mNewPortrait;
+                    mLandscape = mNewLandscape;
+                    mPortraitModified = mNewPortraitModified;
+                    mLandscapeModified = mNewLandscapeModified;
+                }
+                mLoadTask = null;
+                notifyListeners();
+            }
+        }.execute();
+    }
+
+    private void notifyListeners() {
+        List<WallpaperListener> listeners = new ArrayList<WallpaperListener>(mListeners);
+        mListeners.clear();
+        for (WallpaperListener l : listeners) {
+            l.onWallpaperLoaded();
+        }
+    }
+
+    private static long getModified(String path) {
+        File f = new File(path);
+        return (f.exists() && f.canRead()) ? f.lastModified() : 0;
+    }
+
+    private static Bitmap decodeWallpaper(String path, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        // scale factor needed to cover target area
+        final float scale = Math.max((float) targetWidth / options.outWidth,
+                (float) targetHeight / options.outHeight);
+        int sampleSize = 1;
+        while (scale * sampleSize * 2 <= 1) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap source = BitmapFactory.decodeFile(path, options);
+        if (source == null) return null;
+
+        final boolean opaque = isOpaque(source);
+        if (source.getWidth() == targetWidth && source.getHeight() == targetHeight && !opaque) {
+            return source;
+        }
+
+        Bitmap target = Bitmap.createBitmap(targetWidth, targetHeight,
+                opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+        final float s = Math.max((float) targetWidth / source.getWidth(),
+                (float) targetHeight / source.getHeight());
+        Matrix m = new Matrix();
+        m.setScale(s, s);
+        m.postTranslate((targetWidth - source.getWidth() * s) / 2f,
+                (targetHeight - source.getHeight() * s) / 2f);
+        Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(source, m, new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG));
+        canvas.setBitmap(null);
+        source.recycle();
+        return target;
+    }
+
+    private static boolean isOpaque(Bitmap bitmap) {
+        if (!bitmap.hasAlpha()) return true;
+
+        final int width = bitmap.getWidth();
+        final int[] row = new int[width];
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if ((row[x] >>> 24) != 0xFF) return false;
+            }
+        }
+        return true;
+    }
+}
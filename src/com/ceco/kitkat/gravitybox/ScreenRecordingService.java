@@ -40,10 +40,13 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.provider.Settings.SettingNotFoundException;
 import android.util.Log;
@@ -53,16 +56,17 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ScreenRecordingService extends Service {
     private static final String TAG = "GB:ScreenRecordingService";
@@ -71,7 +75,10 @@ public class ScreenRecordingService extends Service {
     private static final int MSG_TASK_ENDED = 1;
     private static final int MSG_TASK_ERROR = 2;
     private static final String SETTING_SHOW_TOUCHES = "show_touches";
-    private static final String TMP_PATH = Environment.getExternalStorageDirectory() + "/__tmp_screenrecord.mp4";
+    private static final String TMP_PATH = Environment.getExternalStorageDirectory() + "/__tmp_screenrecord";
+    private static final int STOP_TIMEOUT = 10000;
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final Pattern PATTERN_FRAMES = Pattern.compile("(\\d+) frames");
 
     public static final String ACTION_SCREEN_RECORDING_START = "gravitybox.intent.action.SCREEN_RECORDING_START";
     public static final String ACTION_SCREEN_RECORDING_STOP = "gravitybox.intent.action.SCREEN_RECORDING_STOP";
@@ -80,6 +87,11 @@ public class ScreenRecordingService extends Service {
     private static final String ACTION_TOGGLE_SHOW_TOUCHES = "gravitybox.intent.action.SCREEN_RECORDING_TOGGLE_SHOW_TOUCHES";
     public static final String EXTRA_RECORDING_STATUS = "recordingStatus";
     public static final String EXTRA_STATUS_MESSAGE = "statusMessage";
+    public static final String EXTRA_FRAMES_WRITTEN = "framesWritten";
+    public static final String EXTRA_BYTES_WRITTEN = "bytesWritten";
+    public static final String EXTRA_DURATION = "duration";
+    public static final String EXTRA_FINALIZE_PATH = "finalizePath";
+    public static final String EXTRA_FINALIZE_PROGRESS = "finalizeProgress";
 
     public static final int STATUS_IDLE = 0;
     public static final int STATUS_RECORDING = 1;
@@ -88,14 +100,26 @@ public class ScreenRecordingService extends Service {
 
     private Handler mHandler;
     private Notification mRecordingNotif;
+    private Notification mFinalizeNotif;
     private int mRecordingStatus;
+    private int mFinalizeTaskCount;
     private int mShowTouchesDefault = 0;
     private SharedPreferences mPrefs;
     private boolean mUseStockBinary;
 
     private CaptureThread mCaptureThread;
 
+    // Supervises screenrecord process without polling:
+    // this thread blocks in waitFor() while output is consumed by separate reader thread.
+    // Interrupting this thread delivers SIGINT to screenrecord and waits for it to finish the file.
     private class CaptureThread extends Thread {
+        // each recording gets its own temporary file so that it can overlap
+        // with finalization of the previous one
+        private final String mTmpPath = TMP_PATH + "_" + System.currentTimeMillis() + ".mp4";
+        private Process mProcess;
+        private volatile long mFramesWritten;
+        private volatile long mStartTime;
+
         public void run() {
             try {
                 // Firstly, make sure we are able to get to pid field of ProcessImpl class
@@ -123,43 +147,49 @@ public class ScreenRecordingService extends Service {
                 if (mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SCREENRECORD_ROTATE, false)) {
                     command.add("--rotate");
                 }
+                // makes screenrecord report number of recorded frames
+                command.add("--verbose");
 
-                command.add(TMP_PATH);
+                command.add(mTmpPath);
 
                 // construct and start the process
                 ProcessBuilder pb = new ProcessBuilder();
                 pb.command(command);
                 pb.redirectErrorStream(true);
-                Process proc = pb.start();
+                final Process proc = pb.start();
+                synchronized (this) {
+                    mProcess = proc;
+                }
+                mStartTime = SystemClock.elapsedRealtime();
 
                 // Get process PID to be used with native kill later
                 final int pid = fieldPid.getInt(proc);
                 Log.d(TAG, "Screenrecord PID = " + pid);
 
-                BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-
-                while (!isInterrupted()) {
-                    if (br.ready()) {
-                        Log.d(TAG, br.readLine());
-                    }
-
-                    try {
-                        int code = proc.exitValue();
-
-                        // If the recording is still running, we won't reach here,
-                        // but will land in the catch block below.
-                        Message msg = Message.obtain(mHandler, MSG_TASK_ENDED, code, 0, null);
-                        mHandler.sendMessage(msg);
-
-                        // No need to stop the process, so we can exit this method early
-                        return;
-                    } catch (IllegalThreadStateException ignore) {
-                        // ignored
+                final Thread outputReader = new Thread("ScreenrecordOutput") {
+                    @Override
+                    public void run() {
+                        readOutput(proc);
                     }
+                };
+                outputReader.start();
+
+                int code;
+                try {
+                    code = proc.waitFor();
+                } catch (InterruptedException e) {
+                    // Terminate the recording process and wait until it finalizes the file
+                    Runtime.getRuntime().exec(new String[]{ "kill", "-2", String.valueOf(pid) });
+                    code = waitForUninterruptibly(proc);
                 }
+                try {
+                    outputReader.join();
+                } catch (InterruptedException ignore) { }
 
-                // Terminate the recording process
-                Runtime.getRuntime().exec(new String[]{ "kill", "-2", String.valueOf(pid) });
+                Log.d(TAG, "Screenrecord exited with code " + code + "; frames written: " +
+                        mFramesWritten + "; bytes written: " + getBytesWritten());
+                Message msg = Message.obtain(mHandler, MSG_TASK_ENDED, code, 0, null);
+                mHandler.sendMessage(msg);
             } catch (IOException e) {
                 // Notify something went wrong
                 Message msg = Message.obtain(mHandler, MSG_TASK_ERROR, 0, 0, e.getMessage());
@@ -185,8 +215,83 @@ public class ScreenRecordingService extends Service {
                 Log.e(TAG, "Error while starting the screenrecord process", e);
             }
         }
+
+        private void readOutput(Process proc) {
+            BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    Log.d(TAG, line);
+                    Matcher m = PATTERN_FRAMES.matcher(line);
+                    if (m.find()) {
+                        mFramesWritten = Long.valueOf(m.group(1));
+                    }
+                }
+            } catch (IOException e) {
+                // stream closed
+            } finally {
+                try { br.close(); } catch (IOException ignore) { }
+            }
+        }
+
+        private int waitForUninterruptibly(Process proc) {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return proc.waitFor();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    interrupt();
+                }
+            }
+        }
+
+        // kills screenrecord that did not react to SIGINT in time
+        public synchronized void destroyProcess() {
+            if (mProcess != null) {
+                Log.w(TAG, "Screenrecord did not stop in time; killing it");
+                mProcess.destroy();
+            }
+        }
+
+        public long getFramesWritten() {
+            return mFramesWritten;
+        }
+
+        public long getBytesWritten() {
+            return new File(mTmpPath).length();
+        }
+
+        public String getTmpPath() {
+            return mTmpPath;
+        }
+
+        public long getDuration() {
+            return mStartTime == 0 ? 0 : SystemClock.elapsedRealtime() - mStartTime;
+        }
     };
 
+    /**
+     * Returns health of current recording: frames and bytes written so far and recording duration.
+     * Frames are reported by screenrecord when it finishes, bytes are read from output file size.
+     * Returns null if there's no recording in progress.
+     */
+    public Bundle getRecordingHealth() {
+        final CaptureThread ct = mCaptureThread;
+        if (ct == null) return null;
+
+        Bundle health = new Bundle();
+        health.putLong(EXTRA_FRAMES_WRITTEN, ct.getFramesWritten());
+        health.putLong(EXTRA_BYTES_WRITTEN, ct.getBytesWritten());
+        health.putLong(EXTRA_DURATION, ct.getDuration());
+        return health;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -202,10 +307,19 @@ public class ScreenRecordingService extends Service {
         mHandler = new Handler() {
             public void handleMessage(Message msg) {
                 if (msg.what == MSG_TASK_ENDED) {
-                    // The screenrecord process stopped, act as if user
-                    // requested the record to stop.
-                    stopScreenrecord();
+                    // The screenrecord process is gone either because we asked it to stop
+                    // or because it stopped on its own (e.g. time limit reached)
+                    mHandler.removeCallbacks(mStopTimeoutRunnable);
+                    if (isRecording()) {
+                        updateStatus(STATUS_PROCESSING);
+                    }
+                    final String tmpPath = mCaptureThread.getTmpPath();
+                    saveRecording(tmpPath);
+                    mCaptureThread = null;
                 } else if (msg.what == MSG_TASK_ERROR) {
+                    if (mCaptureThread != null) {
+                        new File(mCaptureThread.getTmpPath()).delete();
+                    }
                     mCaptureThread = null;
                     updateStatus(STATUS_ERROR, (String) msg.obj);
                     Toast.makeText(ScreenRecordingService.this, 
@@ -239,6 +353,12 @@ public class ScreenRecordingService extends Service {
                 getString(R.string.screenrecord_notif_pointer), pointerPendIntent);
 
         mRecordingNotif = builder.build();
+
+        mFinalizeNotif = new Notification.Builder(this)
+            .setContentTitle(getString(R.string.screenrecord_notif_saving_title))
+            .setSmallIcon(R.drawable.ic_sysbar_camera)
+            .setWhen(System.currentTimeMillis())
+            .build();
     }
 
     @Override
@@ -282,10 +402,8 @@ public class ScreenRecordingService extends Service {
 
     private void updateStatus(int status, String message) {
         mRecordingStatus = status;
-        if (isRecording()) {
-            startForeground(SCREENRECORD_NOTIFICATION_ID, mRecordingNotif);
-        } else {
-            stopForeground(true);
+        updateForeground();
+        if (!isRecording()) {
             resetShowTouches();
         }
 
@@ -294,6 +412,10 @@ public class ScreenRecordingService extends Service {
         if (message != null) {
             intent.putExtra(EXTRA_STATUS_MESSAGE, message);
         }
+        Bundle health = getRecordingHealth();
+        if (health != null) {
+            intent.putExtras(health);
+        }
         sendBroadcast(intent);
     }
 
@@ -301,6 +423,17 @@ public class ScreenRecordingService extends Service {
         updateStatus(status, null);
     }
 
+    // service stays in foreground while recording or while any recording is being moved to its final location
+    private void updateForeground() {
+        if (isRecording()) {
+            startForeground(SCREENRECORD_NOTIFICATION_ID, mRecordingNotif);
+        } else if (mFinalizeTaskCount > 0) {
+            startForeground(SCREENRECORD_NOTIFICATION_ID, mFinalizeNotif);
+        } else {
+            stopForeground(true);
+        }
+    }
+
     private void toggleShowTouches() {
         try {
             final int showTouches = Settings.System.getInt(getContentResolver(), SETTING_SHOW_TOUCHES);
@@ -380,89 +513,143 @@ public class ScreenRecordingService extends Service {
 
         updateStatus(STATUS_PROCESSING);
 
-        try {
-            mCaptureThread.interrupt();
-        } catch (Exception e) { /* ignore */ }
+        // capture thread delivers SIGINT and reports back once screenrecord finalized the file
+        mCaptureThread.interrupt();
+        mHandler.postDelayed(mStopTimeoutRunnable, STOP_TIMEOUT);
+    }
 
-        // Wait a bit for capture thread to finish
-        while (mCaptureThread.isAlive()) {
-            // wait...
+    private Runnable mStopTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mCaptureThread != null) {
+                mCaptureThread.destroyProcess();
+            }
         }
+    };
 
-        // Give a second to screenrecord to process the file
-        mHandler.postDelayed(new Runnable() { public void run() {
-            mCaptureThread = null;
+    private void saveRecording(String tmpPath) {
+        String fileName = "SCR_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
 
-            String fileName = "SCR_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
+        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        File screenrecord = new File(picturesDir, "Screenrecord");
+        if (!screenrecord.exists() && !screenrecord.mkdirs()) {
+            Log.e(TAG, "Cannot create Screenrecord directory");
+            Toast.makeText(ScreenRecordingService.this,
+                    String.format(getString(R.string.screenrecord_toast_save_error_kept),
+                            tmpPath), Toast.LENGTH_LONG).show();
+            updateStatus(STATUS_IDLE);
+            return;
+        }
 
-            File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-            if (!picturesDir.exists()) {
-                if (!picturesDir.mkdir()) {
-                    Log.e(TAG, "Cannot create Pictures directory");
-                    return;
-                }
-            }
+        // recording is finished; moving the file runs in background and new recording can start meanwhile
+        mFinalizeTaskCount++;
+        new FinalizeTask(new File(tmpPath), new File(screenrecord, fileName)).execute();
+        updateStatus(STATUS_IDLE);
+    }
 
-            File screenrecord = new File(picturesDir, "Screenrecord");
-            if (!screenrecord.exists()) {
-                if (!screenrecord.mkdir()) {
-                    Log.e(TAG, "Cannot create Screenrecord directory");
-                    return;
-                }
-            }
+    // Moves recording to its final location: renames it if it's on the same volume
+    // and falls back to channel transfer otherwise
+    private class FinalizeTask extends AsyncTask<Void, Integer, Boolean> {
+        private File mInput;
+        private File mOutput;
 
-            File input = new File(TMP_PATH);
-            final File output = new File(screenrecord, fileName);
+        public FinalizeTask(File input, File output) {
+            mInput = input;
+            mOutput = output;
+        }
 
-            Log.d(TAG, "Copying file to " + output.getAbsolutePath());
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            if (mInput.renameTo(mOutput)) {
+                Log.d(TAG, "Recording renamed to " + mOutput.getAbsolutePath());
+                return true;
+            }
 
+            Log.d(TAG, "Copying recording to " + mOutput.getAbsolutePath());
+            FileInputStream is = null;
+            FileOutputStream os = null;
+            boolean copied = false;
             try {
-                copyFileUsingStream(input, output);
-                input.delete();
-                Toast.makeText(ScreenRecordingService.this,
-                        String.format(getString(R.string.screenrecord_toast_saved), 
-                                output.getPath()), Toast.LENGTH_SHORT).show();
+                is = new FileInputStream(mInput);
+                os = new FileOutputStream(mOutput);
+                final FileChannel in = is.getChannel();
+                final FileChannel out = os.getChannel();
+                final long size = in.size();
+                long position = 0;
+                int lastProgress = -1;
+                while (position < size) {
+                    final long transferred = in.transferTo(position,
+                            Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+                    if (transferred <= 0) {
+                        throw new IOException("Transfer stalled at " + position + " of " + size);
+                    }
+                    position += transferred;
+                    final int progress = (int) (position * 100 / size);
+                    if (progress != lastProgress) {
+                        publishProgress(progress);
+                        lastProgress = progress;
+                    }
+                }
+                copied = true;
+                return true;
             } catch (IOException e) {
                 Log.e(TAG, "Unable to copy output file", e);
+                return false;
+            } finally {
+                try { if (is != null) is.close(); } catch (IOException ignore) { }
+                try { if (os != null) os.close(); } catch (IOException ignore) { }
+                // drop partial output on failure but keep the temporary file
+                // as it may be the only copy of the recording (e.g. disk full)
+                if (copied) {
+                    mInput.delete();
+                } else {
+                    mOutput.delete();
+                }
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            sendFinalizeProgress(mOutput.getAbsolutePath(), values[0]);
+        }
+
+        @Override
+        protected void onPostExecute(Boolean result) {
+            mFinalizeTaskCount--;
+            updateForeground();
+            sendFinalizeProgress(mOutput.getAbsolutePath(), result ? 100 : -1);
+            if (!result) {
                 Toast.makeText(ScreenRecordingService.this,
-                        R.string.screenrecord_toast_save_error, Toast.LENGTH_SHORT).show();
+                        String.format(getString(R.string.screenrecord_toast_save_error_kept),
+                                mInput.getPath()), Toast.LENGTH_LONG).show();
+                return;
             }
 
+            Toast.makeText(ScreenRecordingService.this,
+                    String.format(getString(R.string.screenrecord_toast_saved), 
+                            mOutput.getPath()), Toast.LENGTH_SHORT).show();
+
             // Make it appear in gallery, run MediaScanner
             MediaScannerConnection.scanFile(ScreenRecordingService.this,
-                new String[] { output.getAbsolutePath() }, null,
+                new String[] { mOutput.getAbsolutePath() }, null,
                 new MediaScannerConnection.OnScanCompletedListener() {
                 public void onScanCompleted(String path, Uri uri) {
                     Log.i(TAG, "MediaScanner done scanning " + path);
                 }
             });
+        }
+    }
 
-            updateStatus(STATUS_IDLE);
-        } }, 3000);
+    // progress is reported along with current recording status as it might already be recording again
+    private void sendFinalizeProgress(String path, int progress) {
+        Intent intent = new Intent(ACTION_SCREEN_RECORDING_STATUS_CHANGED);
+        intent.putExtra(EXTRA_RECORDING_STATUS, mRecordingStatus);
+        intent.putExtra(EXTRA_FINALIZE_PATH, path);
+        intent.putExtra(EXTRA_FINALIZE_PROGRESS, progress);
+        sendBroadcast(intent);
     }
 
     private String getBinaryPath() {
         return (mUseStockBinary ? "/system/bin/screenrecord" : getFilesDir() + "/screenrecord");
     }
-
-    private static void copyFileUsingStream(File source, File dest) throws IOException {
-        InputStream is = null;
-        OutputStream os = null;
-        try {
-            is = new FileInputStream(source);
-            os = new FileOutputStream(dest);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = is.read(buffer)) > 0) {
-                os.write(buffer, 0, length);
-            }
-        } finally {
-            if (is != null) {
-                is.close();
-            }
-            if (os != null) {
-                os.close();
-            }
-        }
-    }
 }
@@ -15,22 +15,67 @@
 
 package com.ceco.kitkat.gravitybox;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.CRC32;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Environment;
+import android.util.Log;
 import android.widget.Toast;
 
 public class SettingsManager {
+    private static final String TAG = "GB:SettingsManager";
     private static final String BACKUP_PATH = Environment.getExternalStorageDirectory() + "/GravityBox/backup";
     private static final String BACKUP_OK_FLAG = BACKUP_PATH + "/.backup_ok";
     private static final String BACKUP_NO_MEDIA = BACKUP_PATH + "/.nomedia";
+    private static final String BACKUP_SNAPSHOTS_PATH = BACKUP_PATH + "/snapshots";
+    private static final String BACKUP_BLOBS_PATH = BACKUP_PATH + "/blobs";
+    private static final String MANIFEST_HEADER = "GravityBox backup manifest 1";
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String SNAPSHOT_NAME_FORMAT = "yyyyMMdd-HHmmss-SSS";
+    private static final int MAX_SNAPSHOTS = 5;
+    private static final int RESULT_OK = 0;
 
     private static Context mContext;
     private static SettingsManager mInstance;
+    private AsyncTask<Void, Void, Integer> mTask;
+
+    public interface OperationListener {
+        void onOperationCompleted(boolean success);
+    }
+
+    // Single record of backup manifest; file content is stored in blob named after its checksum and size
+    static class ManifestEntry {
+        String path;
+        long size;
+        long modified;
+        long crc;
+
+        String getBlobName() {
+            return String.format(Locale.US, "%08x_%d", crc, size);
+        }
+    }
 
     private SettingsManager(Context context) {
         mContext = context;
@@ -43,13 +88,113 @@ public class SettingsManager {
         return mInstance;
     }
 
-    public boolean backupSettings() {
-        File targetDir = new File(BACKUP_PATH);
-        if (!(targetDir.exists() && targetDir.isDirectory())) {
-            if (!targetDir.mkdirs()) {
-                Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                return false;
+    private String[] getPrefsFileNames() {
+        return new String[] { 
+                mContext.getPackageName() + "_preferences.xml",
+                "ledcontrol.xml"
+        };
+    }
+
+    private File getDataDir() {
+        return mContext.getFilesDir().getParentFile();
+    }
+
+    public boolean isOperationInProgress() {
+        return mTask != null;
+    }
+
+    private void runOperation(final boolean backup, final String snapshotName,
+            final OperationListener listener) {
+        if (mTask != null) {
+            Toast.makeText(mContext, R.string.settings_operation_in_progress, Toast.LENGTH_SHORT).show();
+            if (listener != null) {
+                listener.onOperationCompleted(false);
             }
+            return;
+        }
+
+        mTask = new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... params) {
+                try {
+                    return backup ? doBackup() : doRestore(snapshotName);
+                } catch (IOException e) {
+                    Log.e(TAG, "Settings " + (backup ? "backup" : "restore") + " failed", e);
+                    return backup ? R.string.settings_backup_failed : R.string.settings_restore_failed;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Integer result) {
+                mTask = null;
+                final boolean success = (result == RESULT_OK);
+                if (success) {
+                    Toast.makeText(mContext, backup ? R.string.settings_backup_success :
+                        R.string.settings_restore_success, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(mContext, result, Toast.LENGTH_LONG).show();
+                }
+                if (listener != null) {
+                    listener.onOperationCompleted(success);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Creates new backup snapshot in background. Only files which changed since the last
+     * snapshot are copied; unchanged content is shared between snapshots.
+     */
+    public void backupSettings(OperationListener listener) {
+        runOperation(true, null, listener);
+    }
+
+    public boolean isBackupAvailable() {
+        return (getLatestSnapshot() != null || new File(BACKUP_OK_FLAG).exists());
+    }
+
+    /**
+     * Returns names of available backup snapshots, newest first.
+     */
+    public String[] getSnapshotNames() {
+        File[] snapshots = getSnapshots();
+        String[] names = new String[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            String name = snapshots[snapshots.length - 1 - i].getName();
+            names[i] = name.substring(0, name.length() - MANIFEST_SUFFIX.length());
+        }
+        return names;
+    }
+
+    public static Date getSnapshotDate(String snapshotName) {
+        try {
+            return new SimpleDateFormat(SNAPSHOT_NAME_FORMAT, Locale.US).parse(snapshotName);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Restores settings from the latest backup snapshot in background.
+     * All blobs are verified against the manifest before any file is replaced.
+     */
+    public void restoreSettings(OperationListener listener) {
+        restoreSettings(null, listener);
+    }
+
+    /**
+     * Restores settings from given backup snapshot in background.
+     * Passing null restores the latest snapshot.
+     */
+    public void restoreSettings(String snapshotName, OperationListener listener) {
+        runOperation(false, snapshotName, listener);
+    }
+
+    private int doBackup() throws IOException {
+        File blobsDir = new File(BACKUP_BLOBS_PATH);
+        File snapshotsDir = new File(BACKUP_SNAPSHOTS_PATH);
+        if (!ensureDirectory(blobsDir, false) || !ensureDirectory(snapshotsDir, false)) {
+            return R.string.settings_backup_failed;
         }
 
         // create .nomedia file to disable media scanning on backup folder
@@ -60,179 +205,274 @@ public class SettingsManager {
             } catch (IOException ioe) { }
         }
 
-        // delete backup OK flag file first (if exists)
-        File backupOkFlagFile = new File(BACKUP_OK_FLAG);
-        if (backupOkFlagFile.exists()) {
-            backupOkFlagFile.delete();
+        Map<String, File> sources = collectSettingsFiles();
+        if (!sources.containsKey("shared_prefs/" + getPrefsFileNames()[0])) {
+            // normally, this should never happen
+            return R.string.settings_backup_no_prefs;
         }
 
-        // preferences
-        String[] prefsFileNames = new String[] { 
-                mContext.getPackageName() + "_preferences.xml",
-                "ledcontrol.xml"
-        };
-        for (String prefsFileName : prefsFileNames) {
-            File prefsFile = new File(mContext.getFilesDir() + "/../shared_prefs/" + prefsFileName);
-            if (prefsFile.exists()) {
-                File prefsDestFile = new File(BACKUP_PATH + "/" + prefsFileName);
-                try {
-                    Utils.copyFile(prefsFile, prefsDestFile);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                    return false;
+        File latestSnapshot = getLatestSnapshot();
+        Map<String, ManifestEntry> previous = latestSnapshot == null ?
+                new HashMap<String, ManifestEntry>() : readManifest(latestSnapshot);
+        List<ManifestEntry> entries = new ArrayList<ManifestEntry>();
+        boolean changed = previous.size() != sources.size();
+        for (Map.Entry<String, File> source : sources.entrySet()) {
+            final File f = source.getValue();
+            ManifestEntry entry = new ManifestEntry();
+            entry.path = source.getKey();
+            entry.size = f.length();
+            entry.modified = f.lastModified();
+
+            ManifestEntry prev = previous.get(entry.path);
+            if (prev != null && prev.size == entry.size && prev.modified == entry.modified &&
+                    new File(blobsDir, prev.getBlobName()).exists()) {
+                entry.crc = prev.crc;
+            } else {
+                entry.crc = computeCrc(f);
+                File blob = new File(blobsDir, entry.getBlobName());
+                if (!blob.exists()) {
+                    File tmpBlob = new File(blobsDir, entry.getBlobName() + ".tmp");
+                    Utils.copyFile(f, tmpBlob);
+                    if (!tmpBlob.renameTo(blob)) {
+                        tmpBlob.delete();
+                        return R.string.settings_backup_failed;
+                    }
                 }
-            } else if (prefsFileName.equals(prefsFileNames[0])) {
-                // normally, this should never happen
-                Toast.makeText(mContext, R.string.settings_backup_no_prefs, Toast.LENGTH_LONG).show();
-                return false;
+                changed |= (prev == null || prev.crc != entry.crc || prev.size != entry.size);
             }
+            entries.add(entry);
         }
 
-        // other files
-        String targetFilesDirPath = BACKUP_PATH + "/files";
-        File targetFilesDir = new File(targetFilesDirPath);
-        if (!(targetFilesDir.exists() && targetFilesDir.isDirectory())) {
-            if (!targetFilesDir.mkdirs()) {
-                Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                return false;
+        if (changed) {
+            String name = new SimpleDateFormat(SNAPSHOT_NAME_FORMAT, Locale.US).format(new Date());
+            writeManifest(new File(snapshotsDir, name + MANIFEST_SUFFIX), entries);
+        }
+        pruneSnapshots();
+        return RESULT_OK;
+    }
+
+    private int doRestore(String snapshotName) throws IOException {
+        File snapshot;
+        if (snapshotName != null) {
+            snapshot = new File(BACKUP_SNAPSHOTS_PATH, snapshotName + MANIFEST_SUFFIX);
+            if (!snapshot.isFile()) {
+                return R.string.settings_restore_no_backup;
+            }
+        } else {
+            snapshot = getLatestSnapshot();
+            if (snapshot == null) {
+                return restoreLegacyBackup();
             }
         }
-        File[] fileList = mContext.getFilesDir().listFiles();
-        if (fileList != null) {
-            for (File f : fileList) {
-                if (f.isFile() && !f.getName().equals("kis_image.png")) {
-                    File outFile = new File(targetFilesDirPath + "/" + f.getName());
-                    try {
-                        Utils.copyFile(f, outFile);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                        return false;
-                    }
-                } else if (f.isDirectory() && f.getName().equals("app_picker")) {
-                    String appPickerFilesDirPath = targetFilesDirPath + "/app_picker";
-                    File appPickerFilesDir = new File(appPickerFilesDirPath);
-                    if (!(appPickerFilesDir.exists() && appPickerFilesDir.isDirectory())) {
-                        if (!appPickerFilesDir.mkdirs()) {
-                            Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                            return false;
-                        }
-                    }
-                    File[] appPickerfileList = f.listFiles();
-                    if (appPickerfileList != null) {
-                        for (File apf : appPickerfileList) {
-                            File outFile = new File(appPickerFilesDirPath + "/" + apf.getName());
-                            try {
-                                Utils.copyFile(apf, outFile);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                                Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                                return false;
-                            }
+
+        Map<String, ManifestEntry> entries = readManifest(snapshot);
+        if (!entries.containsKey("shared_prefs/" + getPrefsFileNames()[0])) {
+            return R.string.settings_restore_no_backup;
+        }
+
+        // verify integrity of all blobs before touching current settings
+        for (ManifestEntry entry : entries.values()) {
+            File blob = new File(BACKUP_BLOBS_PATH, entry.getBlobName());
+            if (!blob.exists() || blob.length() != entry.size || computeCrc(blob) != entry.crc) {
+                Log.e(TAG, "Backup blob corrupted or missing: " + entry.path);
+                return R.string.settings_restore_failed;
+            }
+        }
+
+        for (ManifestEntry entry : entries.values()) {
+            File target = new File(getDataDir(), entry.path);
+            if (target.exists() && target.length() == entry.size && computeCrc(target) == entry.crc) {
+                if (target.lastModified() != entry.modified) {
+                    target.setLastModified(entry.modified);
+                }
+                continue;
+            }
+            if (!ensureDirectory(target.getParentFile(), true)) {
+                return R.string.settings_restore_failed;
+            }
+            Utils.copyFile(new File(BACKUP_BLOBS_PATH, entry.getBlobName()), target);
+            target.setReadable(true, false);
+            // keep recorded mtime so that next backup treats the file as unchanged
+            target.setLastModified(entry.modified);
+        }
+        return RESULT_OK;
+    }
+
+    // Restores backups created by older versions which stored plain copies of files
+    private int restoreLegacyBackup() throws IOException {
+        if (!new File(BACKUP_OK_FLAG).exists()) {
+            return R.string.settings_restore_no_backup;
+        }
+
+        Map<String, File> sources = new LinkedHashMap<String, File>();
+        for (String prefsFileName : getPrefsFileNames()) {
+            File prefsFile = new File(BACKUP_PATH + "/" + prefsFileName);
+            if (prefsFile.exists()) {
+                sources.put("shared_prefs/" + prefsFileName, prefsFile);
+            } else if (prefsFileName.equals(getPrefsFileNames()[0])) {
+                return R.string.settings_restore_no_backup;
+            }
+        }
+        collectFiles(new File(BACKUP_PATH + "/files"), "files", sources, false);
+
+        for (Map.Entry<String, File> source : sources.entrySet()) {
+            File target = new File(getDataDir(), source.getKey());
+            if (!ensureDirectory(target.getParentFile(), true)) {
+                return R.string.settings_restore_failed;
+            }
+            Utils.copyFile(source.getValue(), target);
+            target.setReadable(true, false);
+        }
+        return RESULT_OK;
+    }
+
+    // Returns settings files keyed by their path relative to application data directory
+    private Map<String, File> collectSettingsFiles() {
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        for (String prefsFileName : getPrefsFileNames()) {
+            File prefsFile = new File(getDataDir(), "shared_prefs/" + prefsFileName);
+            if (prefsFile.exists()) {
+                files.put("shared_prefs/" + prefsFileName, prefsFile);
+            }
+        }
+        collectFiles(mContext.getFilesDir(), "files", files, true);
+        return files;
+    }
+
+    private void collectFiles(File dir, String relPath, Map<String, File> files, boolean skipKisImage) {
+        File[] fileList = dir.listFiles();
+        if (fileList == null) return;
+        for (File f : fileList) {
+            if (f.isFile() && !(skipKisImage && f.getName().equals("kis_image.png"))) {
+                files.put(relPath + "/" + f.getName(), f);
+            } else if (f.isDirectory() && f.getName().equals("app_picker")) {
+                File[] appPickerFileList = f.listFiles();
+                if (appPickerFileList != null) {
+                    for (File apf : appPickerFileList) {
+                        if (apf.isFile()) {
+                            files.put(relPath + "/app_picker/" + apf.getName(), apf);
                         }
                     }
                 }
             }
         }
+    }
 
-        try {
-            backupOkFlagFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-            return false;
+    private static boolean ensureDirectory(File dir, boolean worldReadable) {
+        if (dir.exists() && dir.isDirectory()) return true;
+        if (!dir.mkdirs()) return false;
+        if (worldReadable) {
+            dir.setExecutable(true, false);
+            dir.setReadable(true, false);
         }
-       
-        Toast.makeText(mContext, R.string.settings_backup_success, Toast.LENGTH_SHORT).show();
         return true;
     }
 
-    public boolean isBackupAvailable() {
-        File backupOkFlagFile = new File(BACKUP_OK_FLAG);
-        return backupOkFlagFile.exists();
+    private static long computeCrc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            byte[] buf = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = input.read(buf)) > 0) {
+                crc.update(buf, 0, bytesRead);
+            }
+        } finally {
+            if (input != null) input.close();
+        }
+        return crc.getValue();
     }
 
-    public boolean restoreSettings() {
-        if (!isBackupAvailable()) {
-            Toast.makeText(mContext, R.string.settings_restore_no_backup, Toast.LENGTH_SHORT).show();
-            return false;
+    private static File[] getSnapshots() {
+        File[] snapshots = new File(BACKUP_SNAPSHOTS_PATH).listFiles();
+        if (snapshots == null) return new File[0];
+        List<File> manifests = new ArrayList<File>();
+        for (File f : snapshots) {
+            if (f.isFile() && f.getName().endsWith(MANIFEST_SUFFIX)) {
+                manifests.add(f);
+            }
         }
+        File[] result = manifests.toArray(new File[manifests.size()]);
+        // names are timestamps so lexical order is chronological order
+        Arrays.sort(result);
+        return result;
+    }
 
-        // preferences
-        String[] prefsFileNames = new String[] { 
-                mContext.getPackageName() + "_preferences.xml",
-                "ledcontrol.xml"
-        };
-        for (String prefsFileName : prefsFileNames) {
-            File prefsFile = new File(BACKUP_PATH + "/" + prefsFileName);
-            if (prefsFile.exists()) {
-                File prefsDestFile = new File(mContext.getFilesDir() + "/../shared_prefs/" + prefsFileName);
+    private static File getLatestSnapshot() {
+        File[] snapshots = getSnapshots();
+        return snapshots.length == 0 ? null : snapshots[snapshots.length - 1];
+    }
+
+    private static Map<String, ManifestEntry> readManifest(File manifest) throws IOException {
+        Map<String, ManifestEntry> entries = new LinkedHashMap<String, ManifestEntry>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(manifest));
+            if (!MANIFEST_HEADER.equals(reader.readLine())) {
+                throw new IOException("Invalid backup manifest: " + manifest.getName());
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4) continue;
                 try {
-                    Utils.copyFile(prefsFile, prefsDestFile);
-                    prefsDestFile.setReadable(true, false);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(mContext, R.string.settings_restore_failed, Toast.LENGTH_LONG).show();
-                    return false;
+                    ManifestEntry entry = new ManifestEntry();
+                    entry.crc = Long.parseLong(fields[0], 16);
+                    entry.size = Long.parseLong(fields[1]);
+                    entry.modified = Long.parseLong(fields[2]);
+                    entry.path = fields[3];
+                    entries.put(entry.path, entry);
+                } catch (NumberFormatException nfe) {
+                    throw new IOException("Invalid backup manifest entry: " + line);
                 }
-            } else if (prefsFileName.equals(prefsFileNames[0])) {
-                Toast.makeText(mContext, R.string.settings_restore_no_backup, Toast.LENGTH_SHORT).show();
-                return false;
             }
+        } finally {
+            if (reader != null) reader.close();
+        }
+        return entries;
+    }
+
+    private static void writeManifest(File manifest, List<ManifestEntry> entries) throws IOException {
+        File tmpManifest = new File(manifest.getPath() + ".tmp");
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(tmpManifest);
+            writer.write(MANIFEST_HEADER + "\n");
+            for (ManifestEntry entry : entries) {
+                writer.write(Long.toHexString(entry.crc) + "\t" + entry.size + "\t" +
+                        entry.modified + "\t" + entry.path + "\n");
+            }
+        } finally {
+            if (writer != null) writer.close();
+        }
+        if (!tmpManifest.renameTo(manifest)) {
+            tmpManifest.delete();
+            throw new IOException("Unable to write backup manifest");
+        }
+    }
+
+    // Keeps MAX_SNAPSHOTS most recent snapshots and deletes blobs no longer referenced
+    private static void pruneSnapshots() throws IOException {
+        File[] snapshots = getSnapshots();
+        for (int i = 0; i < snapshots.length - MAX_SNAPSHOTS; i++) {
+            snapshots[i].delete();
         }
 
-        // other files
-        String targetFilesDirPath = mContext.getFilesDir().getAbsolutePath();
-        File targetFilesDir = new File(targetFilesDirPath);
-        if (!(targetFilesDir.exists() && targetFilesDir.isDirectory())) {
-            if (targetFilesDir.mkdirs()) {
-                targetFilesDir.setExecutable(true, false);
-                targetFilesDir.setReadable(true, false);
+        Set<String> referencedBlobs = new HashSet<String>();
+        for (File snapshot : getSnapshots()) {
+            for (ManifestEntry entry : readManifest(snapshot).values()) {
+                referencedBlobs.add(entry.getBlobName());
             }
         }
-        File[] fileList = new File(BACKUP_PATH + "/files").listFiles();
-        if (fileList != null) {
-            for (File f : fileList) {
-                if (f.isFile()) {
-                    File outFile = new File(targetFilesDirPath + "/" + f.getName());
-                    try {
-                        Utils.copyFile(f, outFile);
-                        outFile.setReadable(true, false);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        Toast.makeText(mContext, R.string.settings_restore_failed, Toast.LENGTH_LONG).show();
-                        return false;
-                    }
-                } else if (f.isDirectory() && f.getName().equals("app_picker")) {
-                    String appPickerFilesDirPath = targetFilesDirPath + "/app_picker";
-                    File appPickerFilesDir = new File(appPickerFilesDirPath);
-                    if (!(appPickerFilesDir.exists() && appPickerFilesDir.isDirectory())) {
-                        if (appPickerFilesDir.mkdirs()) {
-                            appPickerFilesDir.setExecutable(true, false);
-                            appPickerFilesDir.setReadable(true, false);
-                        }
-                    }
-                    File[] appPickerfileList = f.listFiles();
-                    if (appPickerfileList != null) {
-                        for (File apf : appPickerfileList) {
-                            File outFile = new File(appPickerFilesDirPath + "/" + apf.getName());
-                            try {
-                                Utils.copyFile(apf, outFile);
-                                outFile.setReadable(true, false);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                                Toast.makeText(mContext, R.string.settings_restore_failed, Toast.LENGTH_LONG).show();
-                                return true;
-                            }
-                        }
-                    }
+        File[] blobs = new File(BACKUP_BLOBS_PATH).listFiles();
+        if (blobs != null) {
+            for (File blob : blobs) {
+                if (!referencedBlobs.contains(blob.getName())) {
+                    blob.delete();
                 }
             }
         }
-
-        Toast.makeText(mContext, R.string.settings_restore_success, Toast.LENGTH_SHORT).show();
-        return true;
     }
 
     public String getOrCreateUuid() {
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+/**
+ * Transition table of Smart Radio. Decides when requested state becomes current state
+ * taking debounce window, hysteresis and minimum dwell time into account.
+ * Has no dependencies on Android framework; all time values are passed in by the caller
+ * so that it can be driven by simulated event streams.
+ *
+ * Rules:
+ * - request for current state cancels pending transition (counted as avoided)
+ * - request for other state becomes pending and is committed once requested state
+ *   was stable for debounce window (plus hysteresis when stepping down to POWER_SAVING)
+ *   and current state was held for at least minimum dwell time
+ * - forced request is committed immediately
+ * - deferred step-down drops pending transition (counted as deferred, not avoided);
+ *   repeated deferrals with no other request in between count as one
+ */
+public class SmartRadioStateMachine {
+
+    public static enum State { UNKNOWN, NORMAL, POWER_SAVING };
+
+    private State mState;
+    private State mPendingState;
+    private long mPendingDeadline;
+    private long mStateSince;
+    private long mDebounce;
+    private long mHysteresis;
+    private long mMinDwell;
+
+    private long mTimeNormal;
+    private long mTimePowerSaving;
+    private int mTransitionCount;
+    private int mAvoidedCount;
+    private int mDeferredCount;
+    private boolean mDeferring;
+
+    public SmartRadioStateMachine(long debounce, long hysteresis, long minDwell) {
+        mState = State.UNKNOWN;
+        mPendingDeadline = -1;
+        setTimings(debounce, hysteresis, minDwell);
+    }
+
+    public void setTimings(long debounce, long hysteresis, long minDwell) {
+        mDebounce = Math.max(0, debounce);
+        mHysteresis = Math.max(0, hysteresis);
+        mMinDwell = Math.max(0, minDwell);
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    public State getPendingState() {
+        return mPendingState;
+    }
+
+    /**
+     * Returns time at which pending transition is due or -1 if there's none
+     */
+    public long getDeadline() {
+        return mPendingDeadline;
+    }
+
+    /**
+     * Feeds new requested state into the machine.
+     * Returns true if current state changed as a result.
+     */
+    public boolean request(State state, boolean force, long now) {
+        if (state == null || state == State.UNKNOWN) return false;
+        mDeferring = false;
+
+        if (force || mState == State.UNKNOWN) {
+            clearPending();
+            if (state == mState) return false;
+            commit(state, now);
+            return true;
+        }
+
+        if (state == mState) {
+            if (mPendingState != null) {
+                mAvoidedCount++;
+                clearPending();
+            }
+            return false;
+        }
+
+        // keep deadline of already pending request so that repeated events don't postpone it
+        if (state != mPendingState) {
+            mPendingState = state;
+            long window = mDebounce;
+            if (state == State.POWER_SAVING) {
+                window += mHysteresis;
+            }
+            mPendingDeadline = Math.max(now + window, mStateSince + mMinDwell);
+        }
+
+        return onDeadline(now);
+    }
+
+    /**
+     * Commits pending transition if it's due.
+     * Returns true if current state changed as a result.
+     */
+    public boolean onDeadline(long now) {
+        if (mPendingState == null || now < mPendingDeadline) return false;
+
+        State state = mPendingState;
+        clearPending();
+        commit(state, now);
+        return true;
+    }
+
+    /**
+     * Holds current state back instead of stepping down, e.g. while data transfer is running.
+     * Drops pending transition and counts it as deferred. Caller is expected to request
+     * the state again once the reason for deferring is gone.
+     */
+    public void defer() {
+        clearPending();
+        if (!mDeferring) {
+            mDeferring = true;
+            mDeferredCount++;
+        }
+    }
+
+    /**
+     * Drops pending transition without counting it as avoided, e.g. when Smart Radio gets disabled
+     */
+    public void cancel() {
+        clearPending();
+        mDeferring = false;
+    }
+
+    private void clearPending() {
+        mPendingState = null;
+        mPendingDeadline = -1;
+    }
+
+    private void commit(State state, long now) {
+        accumulate(now);
+        if (mState != State.UNKNOWN) {
+            mTransitionCount++;
+        }
+        mState = state;
+        mStateSince = now;
+    }
+
+    private void accumulate(long now) {
+        long elapsed = Math.max(0, now - mStateSince);
+        if (mState == State.NORMAL) {
+            mTimeNormal += elapsed;
+        } else if (mState == State.POWER_SAVING) {
+            mTimePowerSaving += elapsed;
+        }
+    }
+
+    /**
+     * Returns total time spent in given state including ongoing period
+     */
+    public long getTimeInState(State state, long now) {
+        long time = state == State.NORMAL ? mTimeNormal :
+            state == State.POWER_SAVING ? mTimePowerSaving : 0;
+        if (state == mState && state != State.UNKNOWN) {
+            time += Math.max(0, now - mStateSince);
+        }
+        return time;
+    }
+
+    public int getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /**
+     * Returns number of pending transitions that were cancelled
+     * because requested state flipped back before they were due
+     */
+    public int getAvoidedCount() {
+        return mAvoidedCount;
+    }
+
+    /**
+     * Returns number of episodes during which step-down was held back by caller
+     */
+    public int getDeferredCount() {
+        return mDeferredCount;
+    }
+}
@@ -29,9 +29,13 @@ import de.robv.android.xposed.XposedBridge;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.view.Choreographer;
 
 public class StatusBarIconManager implements BroadcastSubReceiver {
     private static final String TAG = "GB:StatusBarIconManager";
@@ -64,6 +68,12 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
     private ColorInfo mColorInfo;
     private List<IconManagerListener> mListeners;
     private BatteryInfoManager mBatteryInfo;
+    private int mColorGeneration;
+    private boolean mPrerenderEnabled;
+    private Choreographer mChoreographer;
+    private int mPendingFlags;
+    private int mUpdateDepth;
+    private boolean mNotificationScheduled;
 
     public interface IconManagerListener {
         void onIconManagerStatusChanged(int flags, ColorInfo colorInfo);
@@ -154,6 +164,7 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
         mBatteryInfo = new BatteryInfoManager(context, gbContext);
 
         mListeners = new ArrayList<IconManagerListener>();
+        mChoreographer = Choreographer.getInstance();
     }
 
     private void initColorInfo() {
@@ -233,9 +244,50 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
         }
     }
 
+    // Accumulates flags and delivers them to listeners in a single notification on the next frame
     private void notifyListeners(int flags) {
-        for (IconManagerListener listener : mListeners) {
-            listener.onIconManagerStatusChanged(flags, mColorInfo);
+        mPendingFlags |= flags;
+        if (mUpdateDepth == 0) {
+            scheduleNotification();
+        }
+    }
+
+    private void scheduleNotification() {
+        if (!mNotificationScheduled && mPendingFlags != 0) {
+            mNotificationScheduled = true;
+            mChoreographer.postFrameCallback(mNotifyFrameCallback);
+        }
+    }
+
+    private Choreographer.FrameCallback mNotifyFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mNotificationScheduled = false;
+            if (mUpdateDepth > 0) return;
+            final int flags = mPendingFlags;
+            mPendingFlags = 0;
+            if (flags == 0) return;
+            if (DEBUG) log("Notifying listeners with flags: " + Integer.toHexString(flags));
+            for (IconManagerListener listener : new ArrayList<IconManagerListener>(mListeners)) {
+                listener.onIconManagerStatusChanged(flags, mColorInfo);
+            }
+        }
+    };
+
+    /**
+     * Starts a batch of changes. Listeners are not notified until matching endUpdate() is called.
+     * Calls can be nested.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    public void endUpdate() {
+        if (mUpdateDepth > 0) {
+            mUpdateDepth--;
+        }
+        if (mUpdateDepth == 0) {
+            scheduleNotification();
         }
     }
 
@@ -303,6 +355,7 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
     public void setDataActivityColor(int index, int color) {
         if (mColorInfo.dataActivityColor[index] != color) {
             mColorInfo.dataActivityColor[index] = color;
+            clearCache();
             notifyListeners(FLAG_DATA_ACTIVITY_COLOR_CHANGED);
         }
     }
@@ -329,6 +382,39 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
         }
     }
 
+    public void setPrerenderEnabled(boolean enabled) {
+        if (mPrerenderEnabled != enabled) {
+            mPrerenderEnabled = enabled;
+            clearCache();
+            notifyListeners(FLAG_ICON_COLOR_CHANGED | FLAG_DATA_ACTIVITY_COLOR_CHANGED);
+        }
+    }
+
+    public boolean isPrerenderEnabled() {
+        return mPrerenderEnabled;
+    }
+
+    // Returns either drawable with color filter set or, if prerendering is enabled,
+    // a plain bitmap drawable with the color already baked in so no filter is needed when drawing
+    private Drawable tint(Drawable drawable, int color, PorterDuff.Mode mode) {
+        if (drawable == null) return null;
+        final int width = drawable.getIntrinsicWidth();
+        final int height = drawable.getIntrinsicHeight();
+        if (!mPrerenderEnabled || width <= 0 || height <= 0) {
+            drawable.setColorFilter(color, mode);
+            return drawable;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, width, height);
+        drawable.setColorFilter(color, mode);
+        drawable.draw(canvas);
+        drawable.clearColorFilter();
+        if (DEBUG) log("tint: prerendered " + width + "x" + height + " bitmap");
+        return new BitmapDrawable(mSystemUiRes, bitmap);
+    }
+
     public Drawable applyColorFilter(int index, Drawable drawable, PorterDuff.Mode mode) {
         if (drawable != null) {
             drawable.setColorFilter(mColorInfo.iconColor[index], mode);
@@ -349,16 +435,20 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
     }
 
     public Drawable applyDataActivityColorFilter(int index, Drawable drawable) {
-        drawable.setColorFilter(mColorInfo.dataActivityColor[index], PorterDuff.Mode.SRC_IN);
-        return drawable;
+        return tint(drawable, mColorInfo.dataActivityColor[index], PorterDuff.Mode.SRC_IN);
     }
 
     public Drawable applyDataActivityColorFilter(Drawable drawable) {
         return applyDataActivityColorFilter(0, drawable);
     }
 
+    public int getColorGeneration() {
+        return mColorGeneration;
+    }
+
     public void clearCache() {
         mIconCache.clear();
+        mColorGeneration++;
         if (DEBUG) log("Cache cleared");
     }
 
@@ -394,7 +484,7 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
                 if (cd != null) return cd;
                 if (mWifiIconIds.containsKey(key)) {
                     Drawable d = mGbResources.getDrawable(mWifiIconIds.get(key)).mutate();
-                    d = applyColorFilter(d);
+                    d = tint(d, mColorInfo.iconColor[0], PorterDuff.Mode.SRC_IN);
                     setCachedDrawable(key, d);
                     return d;
                 }
@@ -405,7 +495,7 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
                 cd = getCachedDrawable(key);
                 if (cd != null) return cd;
                 Drawable d = mSystemUiRes.getDrawable(resId).mutate();
-                d = applyColorFilter(d);
+                d = tint(d, mColorInfo.iconColor[0], PorterDuff.Mode.SRC_IN);
                 setCachedDrawable(key, d);
                 return d;
 
@@ -433,26 +523,27 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
         if (!mAllowMobileIconChange[index]) {
             return null;
         }
+        final String cacheKey = index == 0 ? key : key + "_" + index;
 
         switch(mColorInfo.signalIconMode) {
             case SI_MODE_GB:
-                cd = getCachedDrawable(key);
+                cd = getCachedDrawable(cacheKey);
                 if (cd != null) return cd;
                 if (mMobileIconIds.containsKey(key)) {
                     Drawable d = mGbResources.getDrawable(mMobileIconIds.get(key)).mutate();
-                    d = applyColorFilter(index, d);
-                    setCachedDrawable(key, d);
+                    d = tint(d, mColorInfo.iconColor[index], PorterDuff.Mode.SRC_IN);
+                    setCachedDrawable(cacheKey, d);
                     return d;
                 }
                 if (DEBUG) log("getMobileIcon: no drawable for key: " + key);
                 return null;
 
             case SI_MODE_STOCK:
-                cd = getCachedDrawable(key);
+                cd = getCachedDrawable(cacheKey);
                 if (cd != null) return cd;
                 Drawable d = mSystemUiRes.getDrawable(resId).mutate();
-                d = applyColorFilter(index, d);
-                setCachedDrawable(key, d);
+                d = tint(d, mColorInfo.iconColor[index], PorterDuff.Mode.SRC_IN);
+                setCachedDrawable(cacheKey, d);
                 return d;
 
             case SI_MODE_DISABLED:
@@ -465,6 +556,32 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
         return getMobileIcon(0, resId, fullyConnected);
     }
 
+    /**
+     * Returns SystemUI icon tinted by icon color of given index. Result is cached until colors change.
+     * @throws Resources.NotFoundException if there is no such resource
+     */
+    public Drawable getTintedIcon(int index, int resId) {
+        return getTintedIcon("tint_", resId, mColorInfo.iconColor[index], index);
+    }
+
+    /**
+     * Returns SystemUI icon tinted by data activity color of given index. Result is cached until colors change.
+     * @throws Resources.NotFoundException if there is no such resource
+     */
+    public Drawable getTintedDataActivityIcon(int index, int resId) {
+        return getTintedIcon("tint_da_", resId, mColorInfo.dataActivityColor[index], index);
+    }
+
+    private Drawable getTintedIcon(String prefix, int resId, int color, int index) {
+        final String key = prefix + mSystemUiRes.getResourceEntryName(resId) + "_" + index;
+        Drawable d = getCachedDrawable(key);
+        if (d == null) {
+            d = tint(mSystemUiRes.getDrawable(resId).mutate(), color, PorterDuff.Mode.SRC_IN);
+            setCachedDrawable(key, d);
+        }
+        return d;
+    }
+
     public boolean isMobileIconChangeAllowed(int index) {
         return mAllowMobileIconChange[index];
     }
@@ -488,10 +605,10 @@ public class StatusBarIconManager implements BroadcastSubReceiver {
                 if (d != null) return d;
                 if (mBasicIconIds.get(key)[mColorInfo.iconStyle] != null) {
                     d = mGbResources.getDrawable(mBasicIconIds.get(key)[mColorInfo.iconStyle]).mutate();
-                    d = applyColorFilter(d);
+                    d = tint(d, mColorInfo.iconColor[0], PorterDuff.Mode.SRC_IN);
                 } else {
                     d = mSystemUiRes.getDrawable(resId).mutate();
-                    d = applyColorFilter(d, PorterDuff.Mode.SRC_ATOP);
+                    d = tint(d, mColorInfo.iconColor[0], PorterDuff.Mode.SRC_ATOP);
                 }
                 setCachedDrawable(key, d);
                 if (DEBUG) log("getBasicIcon: returning drawable for key: " + key);
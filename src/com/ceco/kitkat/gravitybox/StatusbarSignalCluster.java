@@ -70,6 +70,8 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
     private Field mFldMobileTypeView;
     private Field mFldWifiView;
     private Field mFldAirplaneView;
+    private Field mFldWifiStrengthId;
+    private Field mFldMobileStrengthId;
     private List<String> mErrorsLogged = new ArrayList<String>();
 
     // Connection state and data activity
@@ -92,6 +94,18 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
 
     // Signal activity
     enum SignalType { WIFI, MOBILE };
+
+    // Last state applied to views of a signal so that redundant updates can be skipped
+    static class SignalState {
+        int iconResId;
+        Drawable iconDrawable;
+        Drawable typeDrawable;
+        boolean fullyConnected = true;
+        boolean activityIn;
+        boolean activityOut;
+        int colorGeneration = -1;
+    }
+
     class SignalActivity {
         boolean enabled;
         boolean fullyConnected = true;
@@ -102,15 +116,21 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
         Drawable imageDataInOut;
         ImageView activityView;
         SignalType signalType;
+        SignalState connectionState;
+        SignalState activityState;
+        int skippedUpdates;
 
         public SignalActivity(ViewGroup container, SignalType type) {
             signalType = type;
+            connectionState = new SignalState();
+            activityState = new SignalState();
             if (mDataActivityEnabled) {
                 activityView = new ImageView(container.getContext());
                 FrameLayout.LayoutParams lp = new FrameLayout.LayoutParams(
                         FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT);
                 lp.gravity = Gravity.CENTER | Gravity.BOTTOM;
                 activityView.setLayoutParams(lp);
+                activityView.setVisibility(View.GONE);
                 container.addView(activityView);
                 if (type == SignalType.WIFI) {
                     imageDataIn = mGbResources.getDrawable(R.drawable.stat_sys_wifi_in);
@@ -139,67 +159,148 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
             activityIn = in;
             activityOut = out;
 
-            // partially/fully connected state
+            boolean updated = false;
             if (mConnectionStateEnabled) {
-                if (!(mIconManager.isColoringEnabled() &&
-                        mIconManager.getSignalIconMode() != StatusBarIconManager.SI_MODE_DISABLED)) {
-                    ImageView signalIcon = signalType == SignalType.WIFI ?
-                            (ImageView) mFldWifiView.get(mView) : (ImageView) mFldMobileView.get(mView);
-                    if (signalIcon != null && signalIcon.getDrawable() != null) {
-                        Drawable d = signalIcon.getDrawable().mutate();
-                        if (!fullyConnected) {
-                            d.setColorFilter(Color.rgb(244, 145, 85), PorterDuff.Mode.SRC_ATOP);
-                        } else {
-                            d.clearColorFilter();
-                        }
-                        signalIcon.setImageDrawable(d);
-                    }
-                    if (signalType == SignalType.MOBILE) {
-                        ImageView dataTypeIcon = (ImageView) mFldMobileTypeView.get(mView);
-                        if (dataTypeIcon != null && dataTypeIcon.getDrawable() != null) {
-                            Drawable dti = dataTypeIcon.getDrawable().mutate();
-                            if (!fullyConnected) {
-                                dti.setColorFilter(Color.rgb(244, 145, 85), PorterDuff.Mode.SRC_ATOP);
-                            } else {
-                                dti.clearColorFilter();
-                            }
-                            dataTypeIcon.setImageDrawable(dti);
-                        }
-                    }
-                    if (DEBUG) log("SignalActivity: " + signalType + ": connection state updated");
-                } else {
-                    apply();
+                updated |= updateConnectionState();
+            }
+            if (mDataActivityEnabled) {
+                updated |= updateDataActivity();
+            }
+            if (!updated) {
+                skippedUpdates++;
+                if (DEBUG) log("SignalActivity: " + signalType + ": update skipped; total skipped: " +
+                        skippedUpdates);
+            }
+        }
+
+        // partially/fully connected state
+        private boolean updateConnectionState() throws Throwable {
+            final SignalState state = connectionState;
+            final int colorGeneration = mIconManager.getColorGeneration();
+
+            if (mIconManager.isColoringEnabled() &&
+                    mIconManager.getSignalIconMode() != StatusBarIconManager.SI_MODE_DISABLED) {
+                // colored icons reflect connection state themselves; re-apply only on change
+                if (state.fullyConnected == fullyConnected &&
+                        state.colorGeneration == colorGeneration) {
+                    return false;
                 }
+                apply();
+                state.fullyConnected = fullyConnected;
+                state.colorGeneration = colorGeneration;
+                state.iconResId = 0;
+                state.iconDrawable = null;
+                state.typeDrawable = null;
+                return true;
             }
 
-            // in/out activity
-            if (mDataActivityEnabled) {
-                if (activityIn && activityOut) {
-                    activityView.setImageDrawable(imageDataInOut);
-                } else if (activityIn) {
-                    activityView.setImageDrawable(imageDataIn);
-                } else if (activityOut) {
-                    activityView.setImageDrawable(imageDataOut);
+            ImageView signalIcon = signalType == SignalType.WIFI ?
+                    (ImageView) mFldWifiView.get(mView) : (ImageView) mFldMobileView.get(mView);
+            ImageView dataTypeIcon = signalType == SignalType.MOBILE ?
+                    (ImageView) mFldMobileTypeView.get(mView) : null;
+            Drawable icon = signalIcon == null ? null : signalIcon.getDrawable();
+            Drawable dataType = dataTypeIcon == null ? null : dataTypeIcon.getDrawable();
+            int iconResId = getSignalIconResId(signalType);
+
+            if (state.iconResId == iconResId && state.iconDrawable == icon &&
+                    state.typeDrawable == dataType && state.fullyConnected == fullyConnected &&
+                    state.colorGeneration == colorGeneration) {
+                return false;
+            }
+
+            if (icon != null) {
+                icon = icon.mutate();
+                if (!fullyConnected) {
+                    icon.setColorFilter(Color.rgb(244, 145, 85), PorterDuff.Mode.SRC_ATOP);
+                } else {
+                    icon.clearColorFilter();
+                }
+                signalIcon.setImageDrawable(icon);
+            }
+            if (dataType != null) {
+                dataType = dataType.mutate();
+                if (!fullyConnected) {
+                    dataType.setColorFilter(Color.rgb(244, 145, 85), PorterDuff.Mode.SRC_ATOP);
+                } else {
+                    dataType.clearColorFilter();
                 }
-                activityView.setVisibility(activityIn || activityOut ?
-                        View.VISIBLE : View.GONE);
-                if (DEBUG) log("SignalActivity: " + signalType + ": data activity indicators updated");
+                dataTypeIcon.setImageDrawable(dataType);
+            }
+
+            state.iconResId = iconResId;
+            state.iconDrawable = icon;
+            state.typeDrawable = dataType;
+            state.fullyConnected = fullyConnected;
+            state.colorGeneration = colorGeneration;
+            if (DEBUG) log("SignalActivity: " + signalType + ": connection state updated");
+            return true;
+        }
+
+        // in/out activity
+        private boolean updateDataActivity() {
+            final SignalState state = activityState;
+            final int colorGeneration = mIconManager.getColorGeneration();
+            if (state.colorGeneration == colorGeneration &&
+                    state.activityIn == activityIn && state.activityOut == activityOut) {
+                return false;
             }
+
+            if (activityIn && activityOut) {
+                activityView.setImageDrawable(imageDataInOut);
+            } else if (activityIn) {
+                activityView.setImageDrawable(imageDataIn);
+            } else if (activityOut) {
+                activityView.setImageDrawable(imageDataOut);
+            }
+            activityView.setVisibility(activityIn || activityOut ?
+                    View.VISIBLE : View.GONE);
+
+            state.activityIn = activityIn;
+            state.activityOut = activityOut;
+            state.colorGeneration = colorGeneration;
+            if (DEBUG) log("SignalActivity: " + signalType + ": data activity indicators updated");
+            return true;
         }
 
         public void updateDataActivityColor() {
+            // drawables might get replaced by prerendered bitmaps so the view has to be refreshed
             if (imageDataIn != null) {
                 imageDataIn = mIconManager.applyDataActivityColorFilter(imageDataIn);
             }
             if (imageDataOut != null) {
-                imageDataOut = mIconManager.applyDataActivityColorFilter(imageDataInOut);
+                imageDataOut = mIconManager.applyDataActivityColorFilter(imageDataOut);
             }
             if (imageDataInOut != null) {
                 imageDataInOut = mIconManager.applyDataActivityColorFilter(imageDataInOut);
             }
+            // apply() hook refreshes activity only along with connection state so do it here
+            if (activityView != null) {
+                updateDataActivity();
+            }
         }
     } 
 
+    private int getSignalIconResId(SignalType type) {
+        Field field = type == SignalType.WIFI ? mFldWifiStrengthId : mFldMobileStrengthId;
+        if (field == null) return 0;
+        try {
+            return field.getInt(mView);
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    public int getSkippedUpdateCount() {
+        int count = 0;
+        if (mWifiActivity != null) {
+            count += mWifiActivity.skippedUpdates;
+        }
+        if (mMobileActivity != null) {
+            count += mMobileActivity.skippedUpdates;
+        }
+        return count;
+    }
+
     public static void initResources(XSharedPreferences prefs, InitPackageResourcesParam resparam) {
         if (prefs.getBoolean(GravityBoxSettings.PREF_KEY_SIGNAL_CLUSTER_HPLUS, false)) {
             XModuleResources modRes = XModuleResources.createInstance(GravityBox.MODULE_PATH, resparam.res);
@@ -252,6 +353,8 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
         mFldMobileTypeView = resolveField("mMobileType", "mMobileTypeView");
         mFldWifiView = resolveField("mWifi", "mWifiStrengthView");
         mFldAirplaneView = resolveField("mAirplane", "mAirplaneView");
+        mFldWifiStrengthId = resolveIntField("mWifiStrengthId");
+        mFldMobileStrengthId = resolveIntField("mMobileStrengthId");
 
         initPreferences();
         createHooks();
@@ -273,6 +376,11 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
         return field;
     }
 
+    private Field resolveIntField(String... fieldNames) {
+        Field field = resolveField(fieldNames);
+        return (field != null && field.getType() == int.class) ? field : null;
+    }
+
     private void createHooks() {
         try {
             XposedHelpers.findAndHookMethod(mView.getClass(), "apply", new XC_MethodHook() {
@@ -451,8 +559,7 @@ public class StatusbarSignalCluster implements BroadcastSubReceiver, IconManager
                     if (mobileType != null) {
                         try {
                             int resId = XposedHelpers.getIntField(mView, "mMobileTypeId");
-                            Drawable d = mResources.getDrawable(resId).mutate();
-                            d = mIconManager.applyColorFilter(d);
+                            Drawable d = mIconManager.getTintedIcon(0, resId);
                             mobileType.setImageDrawable(d);
                         } catch (Resources.NotFoundException e) { 
                             mobileType.setImageDrawable(null);
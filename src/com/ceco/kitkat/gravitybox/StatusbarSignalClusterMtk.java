@@ -64,8 +64,7 @@ public class StatusbarSignalClusterMtk extends StatusbarSignalCluster {
                         int resId = (wifiActivityId instanceof Integer) ?
                                 (Integer) wifiActivityId :
                                     (Integer) XposedHelpers.callMethod(wifiActivityId, "getIconId");
-                        Drawable d = mResources.getDrawable(resId).mutate();
-                        d = mIconManager.applyDataActivityColorFilter(d);
+                        Drawable d = mIconManager.getTintedDataActivityIcon(0, resId);
                         wifiActivity.setImageDrawable(d);
                     } catch (Resources.NotFoundException e) {
                         wifiActivity.setImageDrawable(null);
@@ -155,8 +154,7 @@ public class StatusbarSignalClusterMtk extends StatusbarSignalCluster {
                             try {
                                 int resId = (Integer) XposedHelpers.callMethod(
                                         mMobileActivityIds[slot], "getIconId");
-                                Drawable d = mResources.getDrawable(resId).mutate();
-                                d = mIconManager.applyDataActivityColorFilter(slot, d);
+                                Drawable d = mIconManager.getTintedDataActivityIcon(slot, resId);
                                 mMobileActivity[slot].setImageDrawable(d);
                             } catch (Resources.NotFoundException e) {
                                 mMobileActivity[slot].setImageDrawable(null);
@@ -167,8 +165,7 @@ public class StatusbarSignalClusterMtk extends StatusbarSignalCluster {
                                 int resId = Utils.hasGeminiSupport() ?
                                         (Integer) XposedHelpers.callMethod(mMobileTypeIds[slot], "getIconId") :
                                             XposedHelpers.getIntField(mView, "mMobileTypeId");
-                                Drawable d = mResources.getDrawable(resId).mutate();
-                                d = mIconManager.applyColorFilter(slot, d);
+                                Drawable d = mIconManager.getTintedIcon(slot, resId);
                                 mMobileType[slot].setImageDrawable(d);
                             } catch (Resources.NotFoundException e) {
                                 mMobileType[slot].setImageDrawable(null);
@@ -178,8 +175,7 @@ public class StatusbarSignalClusterMtk extends StatusbarSignalCluster {
                             if (mMobileRoam != null) {
                                 try {
                                     int resId = mRoamingId[slot];
-                                    Drawable d = mResources.getDrawable(resId).mutate();
-                                    d = mIconManager.applyColorFilter(slot, d);
+                                    Drawable d = mIconManager.getTintedIcon(slot, resId);
                                     mMobileRoam[slot].setImageDrawable(d);
                                 } catch (Resources.NotFoundException e) {
                                     mMobileRoam[slot].setImageDrawable(null);
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox;
+
+/**
+ * Rolling throughput estimate (exponentially weighted moving average)
+ * computed from samples of monotonic byte counter.
+ * Has no dependencies on Android framework; caller supplies counter values and time.
+ */
+public class ThroughputEstimator {
+    private static final float DEFAULT_WEIGHT = 0.4f;
+
+    private float mWeight;
+    private long mLastBytes;
+    private long mLastTime;
+    private float mRate;
+    private boolean mHasBaseline;
+    private boolean mHasRate;
+
+    public ThroughputEstimator() {
+        this(DEFAULT_WEIGHT);
+    }
+
+    /**
+     * @param weight weight of the most recent sample in range (0, 1]
+     */
+    public ThroughputEstimator(float weight) {
+        mWeight = Math.max(0.01f, Math.min(1f, weight));
+    }
+
+    public void reset() {
+        mHasBaseline = false;
+        mHasRate = false;
+        mRate = 0;
+    }
+
+    /**
+     * Feeds new counter sample.
+     * @param totalBytes current value of byte counter
+     * @param now current time in milliseconds
+     */
+    public void update(long totalBytes, long now) {
+        if (!mHasBaseline || totalBytes < mLastBytes || now <= mLastTime) {
+            // first sample or counter reset
+            mLastBytes = totalBytes;
+            mLastTime = now;
+            mHasBaseline = true;
+            return;
+        }
+
+        float rate = (totalBytes - mLastBytes) * 1000f / (now - mLastTime);
+        mRate = mHasRate ? mWeight * rate + (1 - mWeight) * mRate : rate;
+        mHasRate = true;
+        mLastBytes = totalBytes;
+        mLastTime = now;
+    }
+
+    /**
+     * Returns true once at least two samples were fed since last reset
+     */
+    public boolean hasRate() {
+        return mHasRate;
+    }
+
+    /**
+     * Returns estimated throughput in bytes per second
+     */
+    public long getRate() {
+        return (long) mRate;
+    }
+}
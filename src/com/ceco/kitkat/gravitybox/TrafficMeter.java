@@ -163,7 +163,7 @@ public class TrafficMeter extends TrafficMeterAbstract {
                 long trafficBurstBytes = (mCanReadFromFile && disconnected) ? mTotalRxBytes - mTrafficBurstStartBytes : currentRxBytes - mTrafficBurstStartBytes;
 
                 if (trafficBurstBytes != 0 && mTrafficMeterSummaryTime != 0) {
-                    setText(formatTraffic(trafficBurstBytes, false));
+                    setTrafficText(formatTraffic(trafficBurstBytes, false));
 
                     if (DEBUG) log("Traffic burst ended: " + trafficBurstBytes + "B in "
                                     + (SystemClock.elapsedRealtime() - mTrafficBurstStartTime)
@@ -178,7 +178,7 @@ public class TrafficMeter extends TrafficMeterAbstract {
                     mTrafficBurstStartBytes = mTotalRxBytes;
                 }
                 if (td > 0) {
-                    setText(formatTraffic(newBytes * 1000 / td, true));
+                    setTrafficText(formatTraffic(newBytes * 1000 / td, true));
                 }
             }
 
@@ -186,7 +186,7 @@ public class TrafficMeter extends TrafficMeterAbstract {
             if (mTrafficMeterHide && newBytes == 0) {
                 if (getVisibility() != GONE
                         && mKeepOnUntil < SystemClock.elapsedRealtime()) {
-                    setText("");
+                    setTrafficText("");
                     setVisibility(View.GONE);
                 }
             } else {
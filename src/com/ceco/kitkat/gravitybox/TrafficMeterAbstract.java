@@ -23,10 +23,12 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.PackageManager.NameNotFoundException;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
+import android.text.format.DateUtils;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
@@ -57,6 +59,8 @@ public abstract class TrafficMeterAbstract extends TextView
     private TelephonyManager mPhone;
     protected boolean mMobileDataConnected;
     protected boolean mShowOnlyForMobileData;
+    private CharSequence mTrafficText = "";
+    private String mDownloadProgressText;
 
     protected static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -104,6 +108,15 @@ public abstract class TrafficMeterAbstract extends TextView
     }
 
     public void initialize(XSharedPreferences prefs) {
+        if (mGbContext == null) {
+            try {
+                mGbContext = getContext().createPackageContext(GravityBox.PACKAGE_NAME,
+                        Context.CONTEXT_IGNORE_SECURITY);
+            } catch (NameNotFoundException e) {
+                XposedBridge.log(e);
+            }
+        }
+
         prefs.reload();
         try {
             mSize = Integer.valueOf(prefs.getString(
@@ -143,10 +156,44 @@ public abstract class TrafficMeterAbstract extends TextView
                 if (mShowOnlyWhenDownloadActive) {
                     updateState();
                 }
+            } else if (ModDownloadProvider.ACTION_DOWNLOAD_PROGRESS.equals(action)) {
+                updateDownloadProgress(intent);
             }
         }
     };
 
+    private void updateDownloadProgress(Intent intent) {
+        final int count = intent.getIntExtra(ModDownloadProvider.EXTRA_DOWNLOAD_COUNT, 0);
+        if (count == 0 || mGbContext == null) {
+            if (mDownloadProgressText != null) {
+                mDownloadProgressText = null;
+                setContentDescription(null);
+                setText(mTrafficText);
+            }
+            return;
+        }
+
+        final long throughput = intent.getLongExtra(ModDownloadProvider.EXTRA_THROUGHPUT, 0);
+        final long eta = intent.getLongExtra(ModDownloadProvider.EXTRA_ETA, -1);
+        final String etaText = eta >= 0 ? DateUtils.formatElapsedTime(eta) : "-";
+        mDownloadProgressText = mGbContext.getString(R.string.download_progress_text, count,
+                throughput / 1048576f, etaText);
+        setContentDescription(mGbContext.getString(R.string.download_progress_desc, count,
+                throughput / 1048576f, etaText));
+        setText(mDownloadProgressText);
+        if (DEBUG) log("ACTION_DOWNLOAD_PROGRESS; count=" + count + "; throughput=" + throughput + "; eta=" + eta);
+    }
+
+    // download progress, if there is any, is shown instead of traffic text
+    protected void setTrafficText(CharSequence text) {
+        mTrafficText = text;
+        setText(mDownloadProgressText != null ? mDownloadProgressText : text);
+    }
+
+    protected CharSequence getTrafficText() {
+        return mTrafficText;
+    }
+
     protected boolean getConnectAvailable() {
         ConnectivityManager connManager =
                 (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -163,6 +210,7 @@ public abstract class TrafficMeterAbstract extends TextView
             IntentFilter filter = new IntentFilter();
             filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
             filter.addAction(ModDownloadProvider.ACTION_DOWNLOAD_STATE_CHANGED);
+            filter.addAction(ModDownloadProvider.ACTION_DOWNLOAD_PROGRESS);
             getContext().registerReceiver(mIntentReceiver, filter, null, getHandler());
  
             if (mPhone != null) {
@@ -180,6 +228,9 @@ public abstract class TrafficMeterAbstract extends TextView
             mAttached = false;
             if (DEBUG) log("detached from window");
             getContext().unregisterReceiver(mIntentReceiver);
+            // final progress update won't be received while detached
+            mDownloadProgressText = null;
+            setContentDescription(null);
 
             if (mPhone != null) {
                 mPhone.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
@@ -256,7 +307,7 @@ public abstract class TrafficMeterAbstract extends TextView
         } else {
             stopTrafficUpdates();
             setVisibility(View.GONE);
-            setText("");
+            setTrafficText("");
             if (DEBUG) log("traffic updates stopped");
         }
     }
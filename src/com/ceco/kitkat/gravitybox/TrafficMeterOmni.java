@@ -24,10 +24,8 @@ import java.util.Map;
 import com.ceco.kitkat.gravitybox.StatusBarIconManager.ColorInfo;
 
 import de.robv.android.xposed.XSharedPreferences;
-import de.robv.android.xposed.XposedBridge;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.Drawable;
@@ -97,7 +95,7 @@ public class TrafficMeterOmni extends TrafficMeterAbstract {
             long txData = newTotalTxBytes - totalTxBytes;
 
             if (shouldHide(rxData, txData, timeDelta)) {
-                setText("");
+                setTrafficText("");
                 setVisibility(View.GONE);
             } else {
                 // If bit/s convert from Bytes to bits
@@ -131,9 +129,9 @@ public class TrafficMeterOmni extends TrafficMeterAbstract {
                 }
     
                 // Update view if there's anything new to show
-                if (!output.contentEquals(getText()) || msg.what == 1) {
+                if (!output.contentEquals(getTrafficText()) || msg.what == 1) {
                     setTextSize(TypedValue.COMPLEX_UNIT_PX, (float)textSize);
-                    setText(output);
+                    setTrafficText(output);
                 }
                 setVisibility(View.VISIBLE);
             }
@@ -183,16 +181,12 @@ public class TrafficMeterOmni extends TrafficMeterAbstract {
 
     @Override
     protected void onInitialize(XSharedPreferences prefs) {
-        try {
-            mGbContext = getContext().createPackageContext(GravityBox.PACKAGE_NAME, 
-                    Context.CONTEXT_IGNORE_SECURITY);
+        if (mGbContext != null) {
             SYMBOLS.put("b/s", mGbContext.getString(R.string.bit_per_sec_abbr));
             SYMBOLS.put("B/s", mGbContext.getString(R.string.byte_per_sec_abbr));
             SYMBOLS.put("k", mGbContext.getString(R.string.kilo_abbr));
             SYMBOLS.put("M", mGbContext.getString(R.string.mega_abbr));
             SYMBOLS.put("G", mGbContext.getString(R.string.giga_abbr));
-        } catch (NameNotFoundException e) {
-            XposedBridge.log(e);
         }
 
         mMode = Mode.valueOf(prefs.getString(GravityBoxSettings.PREF_KEY_DATA_TRAFFIC_OMNI_MODE, "IN_OUT"));
@@ -48,6 +48,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -345,22 +346,26 @@ public class Utils {
         }
     }
 
-    public static void copyFile(File source, File dest) throws IOException { 
-        InputStream input = null; 
-        OutputStream output = null; 
-        try { 
-            input = new FileInputStream(source); 
-            output = new FileOutputStream(dest); 
-            byte[] buf = new byte[1024]; 
-            int bytesRead; 
-            while ((bytesRead = input.read(buf)) > 0) { 
-                output.write(buf, 0, bytesRead); 
+    public static void copyFile(File source, File dest) throws IOException {
+        FileChannel input = null;
+        FileChannel output = null;
+        try {
+            input = new FileInputStream(source).getChannel();
+            output = new FileOutputStream(dest).getChannel();
+            final long size = input.size();
+            long position = 0;
+            while (position < size) {
+                final long count = input.transferTo(position, size - position, output);
+                if (count <= 0) {
+                    throw new IOException("Transfer stalled at " + position + " of " + size);
+                }
+                position += count;
             }
         } finally {
-            if (input != null) input.close(); 
-            if (output != null) output.close(); 
-        } 
-    } 
+            if (input != null) input.close();
+            if (output != null) output.close();
+        }
+    }
 
     public static boolean writeAssetToFile(Context context, String assetName, File outFile) {
         try {
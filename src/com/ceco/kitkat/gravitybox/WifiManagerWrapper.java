@@ -69,11 +69,14 @@ public class WifiManagerWrapper {
         this(context, null);
     }
 
+    // passing null removes current listener and unregisters AP state receiver
     public void setWifiApStateChangeListener(WifiApStateChangeListener listener) {
-        if (listener == null) return;
-
         mApStateChangeListener = listener;
-        registerApStateChangeReceiver();
+        if (listener != null) {
+            registerApStateChangeReceiver();
+        } else {
+            unregisterApStateChangeReceiver();
+        }
     }
 
     public void setWifiStateChangeListener(WifiStateChangeListener listener) {
@@ -104,6 +107,14 @@ public class WifiManagerWrapper {
         mContext.registerReceiver(mApStateChangeReceiver, intentFilter);
     }
 
+    private void unregisterApStateChangeReceiver() {
+        if (mContext == null || mApStateChangeReceiver == null)
+            return;
+
+        mContext.unregisterReceiver(mApStateChangeReceiver);
+        mApStateChangeReceiver = null;
+    }
+
     public int getWifiState() {
         return mWifiManager.getWifiState();
     }
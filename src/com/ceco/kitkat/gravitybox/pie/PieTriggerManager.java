@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox.pie;
+
+import com.ceco.kitkat.gravitybox.pie.PieController.Position;
+
+import de.robv.android.xposed.XposedBridge;
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.graphics.Point;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.Display;
+import android.view.View;
+import android.view.WindowManager;
+
+/**
+ * Manages trigger surfaces of all enabled pie edges, one window per enabled edge.
+ * Trigger geometry is computed once per display configuration (rotation, size) and trigger settings
+ * and window manager is touched only for surfaces whose geometry actually changed,
+ * so that repeated configuration or settings callbacks don't cause window relayouts.
+ * Surfaces are kept to thin strips along edges so that ordinary touches don't hit them.
+ * Edges are not merged into a shared window as a rectangle spanning two edges would cover
+ * the whole screen and become a full screen layer every touch is dispatched against.
+ */
+public class PieTriggerManager {
+    private static final String TAG = "GB:PieTriggerManager";
+    private static final boolean DEBUG = false;
+
+    private static final int CENTER_TRIGGER_LENGTH_DP = 60;
+    private static final float EDGE_TRIGGER_LENGTH_FACTOR = 0.8f;
+
+    private Context mContext;
+    private WindowManager mWindowManager;
+    private PieController mPieController;
+    private View.OnTouchListener mOnTouchListener;
+    private View[] mTriggers = new View[Position.values().length];
+    private WindowManager.LayoutParams[] mTriggerParams =
+            new WindowManager.LayoutParams[Position.values().length];
+
+    private int mSlots;
+    private int mThicknessDp;
+    private boolean mCenterTrigger;
+
+    // geometry key of currently applied trigger layout
+    private int mAppliedRotation = -1;
+    private int mAppliedWidth;
+    private int mAppliedHeight;
+    private int mAppliedSlots;
+    private int mAppliedThicknessDp;
+    private boolean mAppliedCenterTrigger;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    public PieTriggerManager(Context context, WindowManager windowManager,
+            PieController pieController, View.OnTouchListener onTouchListener) {
+        mContext = context;
+        mWindowManager = windowManager;
+        mPieController = pieController;
+        mOnTouchListener = onTouchListener;
+    }
+
+    public void setTriggerSlots(int slots) {
+        mSlots = slots;
+    }
+
+    public void setTriggerThickness(int thicknessDp) {
+        mThicknessDp = thicknessDp;
+    }
+
+    public void setCenterTrigger(boolean centerTrigger) {
+        mCenterTrigger = centerTrigger;
+    }
+
+    /**
+     * Brings trigger surfaces in line with current display configuration and trigger settings.
+     * Does nothing when neither of them changed since last call.
+     */
+    public void update() {
+        final Display display = mWindowManager.getDefaultDisplay();
+        final Point size = new Point();
+        display.getSize(size);
+        final int rotation = display.getRotation();
+
+        if (rotation == mAppliedRotation && size.x == mAppliedWidth && size.y == mAppliedHeight &&
+                mSlots == mAppliedSlots && mThicknessDp == mAppliedThicknessDp &&
+                mCenterTrigger == mAppliedCenterTrigger) {
+            if (DEBUG) log("update: trigger geometry unchanged");
+            return;
+        }
+
+        final DisplayMetrics dm = mContext.getResources().getDisplayMetrics();
+        final int thickness = (int) TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, mThicknessDp, dm);
+        final int centerLength = (int) TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, CENTER_TRIGGER_LENGTH_DP, dm);
+        final int width = mCenterTrigger ? centerLength : (int) (size.x * EDGE_TRIGGER_LENGTH_FACTOR);
+        final int height = mCenterTrigger ? centerLength : (int) (size.y * EDGE_TRIGGER_LENGTH_FACTOR);
+        if (DEBUG) log("update: rotation=" + rotation + "; size=" + size + "; thickness=" + thickness);
+
+        for (Position p : Position.values()) {
+            final boolean enabled = (mSlots & p.FLAG) != 0;
+            View trigger = mTriggers[p.INDEX];
+            if (!enabled) {
+                if (trigger != null) {
+                    mWindowManager.removeView(trigger);
+                    mTriggers[p.INDEX] = null;
+                    mTriggerParams[p.INDEX] = null;
+                }
+                continue;
+            }
+
+            final boolean horizontal = p == Position.TOP || p == Position.BOTTOM;
+            final int w = horizontal ? width : thickness;
+            final int h = horizontal ? thickness : height;
+            if (trigger == null) {
+                trigger = createTrigger(p);
+                WindowManager.LayoutParams lp = createLayoutParams(p, w, h);
+                mWindowManager.addView(trigger, lp);
+                mTriggers[p.INDEX] = trigger;
+                mTriggerParams[p.INDEX] = lp;
+            } else {
+                WindowManager.LayoutParams lp = mTriggerParams[p.INDEX];
+                if (lp.width != w || lp.height != h) {
+                    lp.width = w;
+                    lp.height = h;
+                    mWindowManager.updateViewLayout(trigger, lp);
+                }
+            }
+        }
+
+        mAppliedRotation = rotation;
+        mAppliedWidth = size.x;
+        mAppliedHeight = size.y;
+        mAppliedSlots = mSlots;
+        mAppliedThicknessDp = mThicknessDp;
+        mAppliedCenterTrigger = mCenterTrigger;
+    }
+
+    public void removeAll() {
+        for (int i = 0; i < mTriggers.length; i++) {
+            if (mTriggers[i] != null) {
+                mWindowManager.removeView(mTriggers[i]);
+                mTriggers[i] = null;
+                mTriggerParams[i] = null;
+            }
+        }
+        mAppliedRotation = -1;
+    }
+
+    private View createTrigger(Position position) {
+        View trigger = new View(mContext);
+        trigger.setClickable(false);
+        trigger.setLongClickable(false);
+        trigger.setTag(mPieController.buildTracker(position));
+        trigger.setOnTouchListener(mOnTouchListener);
+
+        if (DEBUG) {
+            trigger.setVisibility(View.VISIBLE);
+            trigger.setBackgroundColor(0x77ff0000);
+            log("addPieTrigger on " + position.INDEX
+                    + " with position: " + position + " : " + trigger.toString());
+        }
+        return trigger;
+    }
+
+    private WindowManager.LayoutParams createLayoutParams(Position position, int width, int height) {
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
+                width, height,
+                WindowManager.LayoutParams.TYPE_STATUS_BAR_PANEL,
+                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
+                        | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                        | WindowManager.LayoutParams.FLAG_SPLIT_TOUCH,
+                PixelFormat.TRANSLUCENT);
+        // This title is for debugging only. See: dumpsys window
+        lp.setTitle("PieTrigger" + position.name());
+        if (position == Position.LEFT || position == Position.RIGHT) {
+            lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_STATE_UNCHANGED
+                    | WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE;
+        } else {
+            lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_STATE_UNCHANGED
+                    | WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING;
+        }
+        lp.gravity = position.ANDROID_GRAVITY;
+        return lp;
+    }
+}
@@ -15,6 +15,9 @@
 
 package com.ceco.kitkat.gravitybox.quicksettings;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.ceco.kitkat.gravitybox.BroadcastSubReceiver;
 import com.ceco.kitkat.gravitybox.GravityBoxSettings;
 import com.ceco.kitkat.gravitybox.ModQuickSettings.TileLayout;
@@ -77,6 +80,21 @@ public abstract class AQuickSettingsTile implements OnClickListener, BroadcastSu
         onTilePostCreate();
     }
 
+    public void destroyQuickSettingsTile() {
+        if (mTile == null) return;
+        onTileDestroy();
+        if (mTile.getParent() instanceof ViewGroup) {
+            ((ViewGroup) mTile.getParent()).removeView(mTile);
+        }
+        mTile.setOnClickListener(null);
+        mTile.setOnLongClickListener(null);
+        mTile = null;
+    }
+
+    public View getTileView() {
+        return mTile;
+    }
+
     public void updateLayout(TileLayout tileLayout) {
         if (mTile != null) {
             onLayoutUpdated(tileLayout);
@@ -87,6 +105,9 @@ public abstract class AQuickSettingsTile implements OnClickListener, BroadcastSu
 
     protected void onTilePostCreate() { };
 
+    // tile clone must unregister here everything it registered when created
+    protected void onTileDestroy() { };
+
     protected abstract void onLayoutUpdated(TileLayout tileLayout);
 
     protected abstract void updateTile();
@@ -95,6 +116,13 @@ public abstract class AQuickSettingsTile implements OnClickListener, BroadcastSu
         mHideOnChange = prefs.getBoolean(GravityBoxSettings.PREF_KEY_QUICK_SETTINGS_HIDE_ON_CHANGE, false);
     }
 
+    // broadcast actions tile wants to receive; tile clone handling more actions must extend the list
+    public List<String> getBroadcastActions() {
+        List<String> actions = new ArrayList<String>();
+        actions.add(GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED);
+        return actions;
+    }
+
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED) &&
@@ -22,6 +22,9 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ceco.kitkat.gravitybox.R;
 
@@ -34,7 +37,6 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.hardware.Camera;
-import android.media.ExifInterface;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
@@ -56,6 +58,8 @@ import android.widget.Toast;
 public class CameraTile extends BasicTile {
     private static final String DEFAULT_IMAGE_FILE_NAME_FORMAT = "'IMG'_yyyyMMdd_HHmmss";
     private static final int CAMERA_ID = 0;
+    private static final int MAX_PENDING_WRITES = 4;
+    private static final int BURST_COUNT = 5;
 
     private Handler mHandler;
     private View mIconContainer;
@@ -72,12 +76,15 @@ public class CameraTile extends BasicTile {
     private Camera.Size mCameraSize;
     private boolean mCameraStarted;
     private boolean mCameraBusy;
+    private int mBurstRemaining;
 
     private Camera.CameraInfo mCameraInfo = new Camera.CameraInfo();
     private Camera.Parameters mParams;
 
     private Storage mStorage = new Storage();
     private SimpleDateFormat mImageNameFormatter;
+    private ExecutorService mWriter;
+    private AtomicInteger mPendingWrites = new AtomicInteger(0);
 
     public CameraTile(Context context, Context gbContext, Object statusBar, Object panelBar) {
         super(context, gbContext, statusBar, panelBar);
@@ -100,7 +107,10 @@ public class CameraTile extends BasicTile {
             @Override
             public boolean onLongClick(View v) {
                 if (mCamera != null) {
-                    return false;
+                    // burst mode: shots are queued for writing while next ones are being taken
+                    mBurstRemaining = BURST_COUNT - 1;
+                    mHandler.post(mTakePictureRunnable);
+                    return true;
                 }
 
                 Intent intent = new Intent(MediaStore.INTENT_ACTION_STILL_IMAGE_CAMERA);
@@ -141,6 +151,18 @@ public class CameraTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mHandler.removeCallbacksAndMessages(null);
+        mReleaseCameraRunnable.run();
+        if (mWriter != null) {
+            // let pending writes finish
+            mWriter.shutdown();
+            mWriter = null;
+        }
+        super.onTileDestroy();
+    }
+
     private Runnable mStartRunnable = new Runnable() {
         @Override
         public void run() {
@@ -240,6 +262,12 @@ public class CameraTile extends BasicTile {
             if (mCameraBusy) {
                 return;
             }
+
+            // Throttle if writer can't keep up
+            if (mPendingWrites.get() >= MAX_PENDING_WRITES) {
+                mHandler.postDelayed(this, 100);
+                return;
+            }
             mCameraBusy = true;
 
             // Display flash animation above the preview
@@ -266,28 +294,55 @@ public class CameraTile extends BasicTile {
             try {
                 mCamera.takePicture(null, null, new Camera.PictureCallback() {
                     @Override
-                    public void onPictureTaken(byte[] data, Camera camera) {
+                    public void onPictureTaken(final byte[] data, Camera camera) {
                         mCameraBusy = false;
 
-                        long time = System.currentTimeMillis();
-
-                        int orientation = (mOrientation + mDisplayRotation) % 360;
-
-                        mStorage.addImage(mContext.getContentResolver(),
-                                mImageNameFormatter.format(new Date(time)),
-                                time, orientation, data, mCameraSize.width,
-                                mCameraSize.height);
-
-                        mCamera.startPreview();
+                        final long time = System.currentTimeMillis();
+                        final String title = mImageNameFormatter.format(new Date(time));
+                        // EXIF orientation is the rotation we requested for this shot
+                        final int orientation = mJpegRotation;
+                        final int width = mCameraSize.width;
+                        final int height = mCameraSize.height;
+
+                        // Get preview back immediately and write the picture in background
+                        if (mCamera != null) {
+                            mCamera.startPreview();
+                        }
+                        mPendingWrites.incrementAndGet();
+                        getWriter().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    mStorage.addImage(mContext.getContentResolver(),
+                                            title, time, orientation, data, width, height);
+                                } finally {
+                                    mPendingWrites.decrementAndGet();
+                                }
+                            }
+                        });
+
+                        if (mBurstRemaining > 0) {
+                            mBurstRemaining--;
+                            mHandler.post(mTakePictureRunnable);
+                        }
                     }
                 });
             } catch (RuntimeException e) {
                 // This can happen if user is pressing the
                 // tile too fast, nothing we can do
+                mCameraBusy = false;
+                mBurstRemaining = 0;
             }
         }
     };
 
+    private ExecutorService getWriter() {
+        if (mWriter == null) {
+            mWriter = Executors.newSingleThreadExecutor();
+        }
+        return mWriter;
+    }
+
     private Runnable mReleaseCameraRunnable = new Runnable() {
         @Override
         public void run() {
@@ -299,6 +354,7 @@ public class CameraTile extends BasicTile {
             mCamera.release();
             mCamera = null;
             mCameraStarted = false;
+            mBurstRemaining = 0;
             mCameraOrientationListener.disable();
 
             mIconContainer.setVisibility(View.VISIBLE);
@@ -441,6 +497,7 @@ public class CameraTile extends BasicTile {
         }
 
         // Save the image and add it to media store.
+        // Called from writer thread; orientation must be the one the picture was taken with.
         public Uri addImage(ContentResolver resolver, String title, long date,
                 int orientation, byte[] jpeg, int width, int height) {
             // Save the image.
@@ -453,28 +510,6 @@ public class CameraTile extends BasicTile {
         public Uri addImage(ContentResolver resolver, String title, long date,
             int orientation, int jpegLength, String path, int width, int height) {
 
-            try {
-                ExifInterface exif = new ExifInterface(path);
-                switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, -1)) {
-                    case ExifInterface.ORIENTATION_ROTATE_90:
-                        orientation = 90;
-                        break;
-                    case ExifInterface.ORIENTATION_ROTATE_180:
-                        orientation = 180;
-                        break;
-                    case ExifInterface.ORIENTATION_ROTATE_270:
-                        orientation = 270;
-                        break;
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to read exif", e);
-            }
-
-            if ((mJpegRotation + orientation) % 180 != 0) {
-                width = height;
-                height = width;
-            }
-
             // Insert into MediaStore.
             ContentValues values = new ContentValues(9);
             values.put(ImageColumns.TITLE, title);
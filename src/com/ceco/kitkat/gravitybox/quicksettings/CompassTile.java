@@ -79,6 +79,14 @@ public class CompassTile extends BasicTile implements SensorEventListener {
         return R.layout.quick_settings_tile_compass;
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mActive = false;
+        mSensorManager.unregisterListener(this);
+        mHandler.removeMessages(MSG_UPDATE_COMPASS);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         if (mActive) {
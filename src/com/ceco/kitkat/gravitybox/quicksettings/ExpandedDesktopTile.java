@@ -15,6 +15,8 @@
 
 package com.ceco.kitkat.gravitybox.quicksettings;
 
+import java.util.List;
+
 import com.ceco.kitkat.gravitybox.GravityBoxSettings;
 import com.ceco.kitkat.gravitybox.ModExpandedDesktop;
 import com.ceco.kitkat.gravitybox.R;
@@ -95,6 +97,12 @@ public class ExpandedDesktopTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         mExpanded = (Settings.Global.getInt(mContext.getContentResolver(),
@@ -124,6 +132,13 @@ public class ExpandedDesktopTile extends BasicTile {
         }
     }
 
+    @Override
+    public List<String> getBroadcastActions() {
+        List<String> actions = super.getBroadcastActions();
+        actions.add(GravityBoxSettings.ACTION_PREF_EXPANDED_DESKTOP_MODE_CHANGED);
+        return actions;
+    }
+
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         super.onBroadcastReceived(context, intent);
@@ -105,6 +105,12 @@ public class GpsTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mContext.unregisterReceiver(mLocationManagerReceiver);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         if (mGpsEnabled) {
@@ -16,6 +16,7 @@
 package com.ceco.kitkat.gravitybox.quicksettings;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import android.content.ContentResolver;
@@ -93,6 +94,14 @@ public class LocationTile extends BasicTile {
         return R.layout.quick_settings_tile_location;
     }
 
+    @Override
+    public List<String> getBroadcastActions() {
+        List<String> actions = super.getBroadcastActions();
+        actions.add(LocationManager.MODE_CHANGED_ACTION);
+        actions.add(LocationManager.PROVIDERS_CHANGED_ACTION);
+        return actions;
+    }
+
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         super.onBroadcastReceived(context, intent);
@@ -74,6 +74,13 @@ public class MusicTile extends BasicTile {
         return R.layout.quick_settings_tile_music;
     }
 
+    @Override
+    protected void onTileDestroy() {
+        AudioManager manager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+        manager.unregisterRemoteController(mRemoteController);
+        super.onTileDestroy();
+    }
+
     @Override
     protected void updateTile() {
         final ImageView background =
@@ -40,6 +40,7 @@ public class NetworkModeTile extends BasicTile {
     private boolean mAllow2g3g;
     private boolean mAllowLte;
     private boolean mUseCdma;
+    private SettingsObserver mSettingsObserver;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -141,8 +142,8 @@ public class NetworkModeTile extends BasicTile {
 
     @Override
     protected void onTilePostCreate() {
-        SettingsObserver observer = new SettingsObserver(new Handler());
-        observer.observe();
+        mSettingsObserver = new SettingsObserver(new Handler());
+        mSettingsObserver.observe();
 
         super.onTilePostCreate();
     }
@@ -198,6 +199,12 @@ public class NetworkModeTile extends BasicTile {
         updateCdmaFlags(useCdma);
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
 
@@ -92,6 +92,15 @@ public class NfcTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        if (mStateChangeReceiver != null) {
+            mContext.unregisterReceiver(mStateChangeReceiver);
+            mStateChangeReceiver = null;
+        }
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         switch (mNfcState) {
@@ -338,6 +338,13 @@ public class QuickAppTile extends BasicTile {
         updateSubApp(3, prefs.getString(KEY_QUICKAPP_SLOT4, null));
     }
 
+    @Override
+    public List<String> getBroadcastActions() {
+        List<String> actions = super.getBroadcastActions();
+        actions.add(ACTION_PREF_QUICKAPP_CHANGED);
+        return actions;
+    }
+
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         super.onBroadcastReceived(context, intent);
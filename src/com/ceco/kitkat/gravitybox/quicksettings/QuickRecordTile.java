@@ -157,6 +157,12 @@ public class QuickRecordTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mContext.unregisterReceiver(mBroadcastReceiver);
+        super.onTileDestroy();
+    }
+
     @Override
     protected void updateTile() {
         final Resources res = mGbContext.getResources();
@@ -83,6 +83,12 @@ public class QuietHoursTile extends BasicTile implements QuietHoursListener {
         updateResources();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mManager.unregisterListener(this);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         if (mQh == null) return;
@@ -104,6 +104,15 @@ public class RingerModeTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        if (mSettingsObserver != null) {
+            mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
+            mSettingsObserver = null;
+        }
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         // The title does not change
@@ -133,6 +142,13 @@ public class RingerModeTile extends BasicTile {
         super.onPreferenceInitialize(prefs);
     }
 
+    @Override
+    public List<String> getBroadcastActions() {
+        List<String> actions = super.getBroadcastActions();
+        actions.add(AudioManager.RINGER_MODE_CHANGED_ACTION);
+        return actions;
+    }
+
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         if (DEBUG) log("Received broadcast: " + intent.toString());
@@ -15,8 +15,11 @@
 
 package com.ceco.kitkat.gravitybox.quicksettings;
 
+import java.util.List;
+
 import com.ceco.kitkat.gravitybox.ModSmartRadio;
 import com.ceco.kitkat.gravitybox.R;
+import com.ceco.kitkat.gravitybox.SmartRadioStateMachine;
 
 import android.content.ContentResolver;
 import android.content.Context;
@@ -25,12 +28,14 @@ import android.database.ContentObserver;
 import android.os.Handler;
 import android.provider.Settings;
 import android.view.View;
+import android.widget.Toast;
 
 public class SmartRadioTile extends BasicTile {
 
     private boolean mSmartRadioEnabled;
-    private ModSmartRadio.State mSmartRadioState;
+    private SmartRadioStateMachine.State mSmartRadioState;
     private SettingsObserver mSettingsObserver;
+    private boolean mStatusRequested;
 
     public SmartRadioTile(Context context, Context gbContext, Object statusBar, Object panelBar) {
         super(context, gbContext, statusBar, panelBar);
@@ -42,6 +47,39 @@ public class SmartRadioTile extends BasicTile {
                 mContext.sendBroadcast(i);
             }
         };
+
+        mOnLongClick = new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                mStatusRequested = true;
+                mContext.sendBroadcast(new Intent(ModSmartRadio.ACTION_GET_SMART_RADIO_STATUS));
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public List<String> getBroadcastActions() {
+        List<String> actions = super.getBroadcastActions();
+        actions.add(ModSmartRadio.ACTION_SMART_RADIO_STATUS);
+        return actions;
+    }
+
+    @Override
+    public void onBroadcastReceived(Context context, Intent intent) {
+        super.onBroadcastReceived(context, intent);
+
+        if (intent.getAction().equals(ModSmartRadio.ACTION_SMART_RADIO_STATUS) && mStatusRequested) {
+            mStatusRequested = false;
+            final long minute = 60 * 1000;
+            String status = mGbContext.getString(R.string.smart_radio_status,
+                    intent.getLongExtra(ModSmartRadio.EXTRA_TIME_NORMAL, 0) / minute,
+                    intent.getLongExtra(ModSmartRadio.EXTRA_TIME_POWER_SAVING, 0) / minute,
+                    intent.getIntExtra(ModSmartRadio.EXTRA_TRANSITIONS, 0),
+                    intent.getIntExtra(ModSmartRadio.EXTRA_TRANSITIONS_AVOIDED, 0),
+                    intent.getIntExtra(ModSmartRadio.EXTRA_TRANSITIONS_DEFERRED, 0));
+            Toast.makeText(mContext, status, Toast.LENGTH_LONG).show();
+        }
     }
 
     @Override
@@ -57,17 +95,23 @@ public class SmartRadioTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         mSmartRadioEnabled = Settings.System.getInt(mContext.getContentResolver(),
                 ModSmartRadio.SETTING_SMART_RADIO_ENABLED, 1) == 1;
         String state = Settings.System.getString(mContext.getContentResolver(), 
                 ModSmartRadio.SETTING_SMART_RADIO_STATE);
-        mSmartRadioState = ModSmartRadio.State.valueOf(state == null ? "UNKNOWN" : state);
+        mSmartRadioState = SmartRadioStateMachine.State.valueOf(state == null ? "UNKNOWN" : state);
 
         if (mSmartRadioEnabled) {
             mLabel = mGbContext.getString(R.string.quick_settings_smart_radio_on);
-            mDrawableId = mSmartRadioState == ModSmartRadio.State.POWER_SAVING ?
+            mDrawableId = mSmartRadioState == SmartRadioStateMachine.State.POWER_SAVING ?
                     R.drawable.ic_qs_smart_radio_on : R.drawable.ic_qs_smart_radio_on_normal;
         } else {
             mLabel = mGbContext.getString(R.string.quick_settings_smart_radio_off);
@@ -90,6 +90,15 @@ public class SyncTile extends BasicTile {
         super.onTilePostCreate();
     }
 
+    @Override
+    protected void onTileDestroy() {
+        if (mSyncObserverHandle != null) {
+            ContentResolver.removeStatusChangeListener(mSyncObserverHandle);
+            mSyncObserverHandle = null;
+        }
+        super.onTileDestroy();
+    }
+
     @Override
     protected void updateTile() {
         if (mSyncState) {
@@ -66,6 +66,12 @@ public class WifiApTile extends BasicTile implements WifiApStateChangeListener {
         return R.layout.quick_settings_tile_wifi_ap;
     }
 
+    @Override
+    protected void onTileDestroy() {
+        mWifiManager.setWifiApStateChangeListener(null);
+        super.onTileDestroy();
+    }
+
     @Override
     protected synchronized void updateTile() {
         switch(mWifiApState) {
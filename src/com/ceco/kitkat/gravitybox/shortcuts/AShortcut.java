@@ -61,8 +61,11 @@ public abstract class AShortcut implements IIconListAdapterItem {
     protected abstract String getShortcutName();
     protected abstract ShortcutIconResource getIconResource();
 
+    // Performs action of shortcut launched via ShortcutActivity.ACTION_LAUNCH_ACTION
+    protected abstract void launchAction(Context context, Intent intent);
+
     protected void createShortcut(CreateShortcutListener listener) {
-        Intent launchIntent = new Intent(mContext, ShortcutActivity.class);
+        Intent launchIntent = new Intent(mContext, LaunchActionActivity.class);
         launchIntent.setAction(ShortcutActivity.ACTION_LAUNCH_ACTION);
         launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION, getAction());
         launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION_TYPE, getActionType());
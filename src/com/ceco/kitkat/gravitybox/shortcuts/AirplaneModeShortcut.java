@@ -15,7 +15,7 @@
 
 package com.ceco.kitkat.gravitybox.shortcuts;
 
-import com.ceco.kitkat.gravitybox.ModHwKeys;
+import com.ceco.kitkat.gravitybox.ConnectivityServiceWrapper;
 import com.ceco.kitkat.gravitybox.R;
 
 import android.content.Context;
@@ -24,7 +24,7 @@ import android.content.Intent.ShortcutIconResource;
 import android.graphics.drawable.Drawable;
 
 public class AirplaneModeShortcut extends AShortcut {
-    protected static final String ACTION =  ModHwKeys.ACTION_TOGGLE_AIRPLANE_MODE;
+    protected static final String ACTION =  ConnectivityServiceWrapper.ACTION_TOGGLE_AIRPLANE_MODE;
 
     public AirplaneModeShortcut(Context context) {
         super(context);
@@ -55,7 +55,8 @@ public class AirplaneModeShortcut extends AShortcut {
         return ShortcutIconResource.fromContext(mContext, R.drawable.shortcut_airplane_mode);
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         context.sendBroadcast(launchIntent);
     }
@@ -55,7 +55,8 @@ public class BluetoothShortcut extends AShortcut {
         return ShortcutIconResource.fromContext(mContext, R.drawable.shortcut_bluetooth);
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         context.sendBroadcast(launchIntent);
     }
@@ -55,7 +55,8 @@ public class BrightnessDialogShortcut extends AShortcut {
         return ShortcutIconResource.fromContext(mContext, R.drawable.shortcut_brightness_dialog);
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         context.sendBroadcast(launchIntent);
     }
@@ -55,7 +55,8 @@ public class ExpandNotificationsShortcut extends AShortcut {
         return ShortcutIconResource.fromContext(mContext, R.drawable.shortcut_notifications);
     }
 
-    public static void launchAction(Context context, Intent intent) {
+    @Override
+    protected void launchAction(Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         context.sendBroadcast(launchIntent);
     }
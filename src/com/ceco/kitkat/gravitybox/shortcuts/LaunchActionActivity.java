@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox.shortcuts;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * Trampoline for shortcut launches. Uses NoDisplay theme so no window is created
+ * and no window animation is played; it just dispatches the action and finishes.
+ * Shortcuts created before it existed keep launching through ShortcutActivity.
+ */
+public class LaunchActionActivity extends Activity {
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        final Intent intent = getIntent();
+        if (intent != null && ShortcutActivity.ACTION_LAUNCH_ACTION.equals(intent.getAction())) {
+            ShortcutActivity.launchAction(this, intent);
+        }
+        finish();
+    }
+}
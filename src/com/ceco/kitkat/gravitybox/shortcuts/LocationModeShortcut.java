@@ -82,7 +82,7 @@ public class LocationModeShortcut extends AShortcut {
                 public void onClick(DialogInterface dialog, int which) {
                     LocationModeItem item = (LocationModeItem) list.get(which);
 
-                    Intent launchIntent = new Intent(mContext, ShortcutActivity.class);
+                    Intent launchIntent = new Intent(mContext, LaunchActionActivity.class);
                     launchIntent.setAction(ShortcutActivity.ACTION_LAUNCH_ACTION);
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION, getAction());
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION_TYPE, getActionType());
@@ -108,7 +108,8 @@ public class LocationModeShortcut extends AShortcut {
         dialog.show();
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         launchIntent.putExtra(ConnectivityServiceWrapper.EXTRA_LOCATION_MODE,
                 intent.getIntExtra(ConnectivityServiceWrapper.EXTRA_LOCATION_MODE,
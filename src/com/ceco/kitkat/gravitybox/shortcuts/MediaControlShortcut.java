@@ -80,7 +80,7 @@ public class MediaControlShortcut extends AShortcut {
                 public void onClick(DialogInterface dialog, int which) {
                     MediaControlItem item = (MediaControlItem) list.get(which);
 
-                    Intent launchIntent = new Intent(mContext, ShortcutActivity.class);
+                    Intent launchIntent = new Intent(mContext, LaunchActionActivity.class);
                     launchIntent.setAction(ShortcutActivity.ACTION_LAUNCH_ACTION);
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION, getAction());
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION_TYPE, getActionType());
@@ -106,7 +106,8 @@ public class MediaControlShortcut extends AShortcut {
         dialog.show();
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         launchIntent.putExtra(ModHwKeys.EXTRA_MEDIA_CONTROL,
                 intent.getIntExtra(ModHwKeys.EXTRA_MEDIA_CONTROL, 0));
@@ -93,7 +93,7 @@ public class NetworkModeShortcut extends AShortcut {
                 public void onClick(DialogInterface dialog, int which) {
                     NetworkModeItem item = (NetworkModeItem) list.get(which);
 
-                    Intent launchIntent = new Intent(mContext, ShortcutActivity.class);
+                    Intent launchIntent = new Intent(mContext, LaunchActionActivity.class);
                     launchIntent.setAction(ShortcutActivity.ACTION_LAUNCH_ACTION);
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION, getAction());
                     launchIntent.putExtra(PhoneWrapper.EXTRA_NETWORK_TYPE, item.getNetworkMode());
@@ -119,7 +119,8 @@ public class NetworkModeShortcut extends AShortcut {
         dialog.show();
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         launchIntent.putExtra(PhoneWrapper.EXTRA_NETWORK_TYPE,
                 intent.getIntExtra(PhoneWrapper.EXTRA_NETWORK_TYPE, 0));
@@ -79,7 +79,7 @@ public class QuietHoursShortcut extends AShortcut {
                 public void onClick(DialogInterface dialog, int which) {
                     QhModeItem item = (QhModeItem) list.get(which);
 
-                    Intent launchIntent = new Intent(mContext, ShortcutActivity.class);
+                    Intent launchIntent = new Intent(mContext, LaunchActionActivity.class);
                     launchIntent.setAction(ShortcutActivity.ACTION_LAUNCH_ACTION);
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION, getAction());
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION_TYPE, getActionType());
@@ -107,7 +107,8 @@ public class QuietHoursShortcut extends AShortcut {
         dialog.show();
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         if (intent.hasExtra(QuietHoursActivity.EXTRA_QH_MODE)) {
             launchIntent.putExtra(QuietHoursActivity.EXTRA_QH_MODE,
@@ -86,7 +86,7 @@ public class RingerModeShortcut extends AShortcut {
                 public void onClick(DialogInterface dialog, int which) {
                     RingerModeItem item = (RingerModeItem) list.get(which);
 
-                    Intent launchIntent = new Intent(mContext, ShortcutActivity.class);
+                    Intent launchIntent = new Intent(mContext, LaunchActionActivity.class);
                     launchIntent.setAction(ShortcutActivity.ACTION_LAUNCH_ACTION);
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION, getAction());
                     launchIntent.putExtra(ShortcutActivity.EXTRA_ACTION_TYPE, getActionType());
@@ -112,7 +112,8 @@ public class RingerModeShortcut extends AShortcut {
         dialog.show();
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         launchIntent.putExtra(ModHwKeys.EXTRA_RINGER_MODE,
                 intent.getIntExtra(ModHwKeys.EXTRA_RINGER_MODE,
@@ -56,7 +56,8 @@ public class ScreenrecordShortcut extends AShortcut {
         return ShortcutIconResource.fromContext(mContext, R.drawable.shortcut_screenrecord);
     }
 
-    public static void launchAction(final Context context, Intent intent) {
+    @Override
+    protected void launchAction(final Context context, Intent intent) {
         // delay screenrecord action by half a second
         Handler h = new Handler();
         h.postDelayed(new Runnable() {
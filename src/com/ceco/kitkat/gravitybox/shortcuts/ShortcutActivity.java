@@ -17,7 +17,9 @@ package com.ceco.kitkat.gravitybox.shortcuts;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.ceco.kitkat.gravitybox.R;
 import com.ceco.kitkat.gravitybox.Utils;
@@ -59,6 +61,49 @@ public class ShortcutActivity extends ListActivity {
             AirplaneModeShortcut.ACTION
     ));
 
+    // shortcuts handling launched actions keyed by action; created on first launch
+    private static Map<String, AShortcut> sActionHandlers;
+
+    private static synchronized AShortcut getActionHandler(Context context, String action) {
+        if (sActionHandlers == null) {
+            final Context appContext = context.getApplicationContext();
+            final AShortcut[] shortcuts = new AShortcut[] {
+                new ShowPowerMenuShortcut(appContext),
+                new ExpandNotificationsShortcut(appContext),
+                new ExpandQuicksettingsShortcut(appContext),
+                new ExpandedDesktopShortcut(appContext),
+                new ScreenshotShortcut(appContext),
+                new ScreenrecordShortcut(appContext),
+                new TorchShortcut(appContext),
+                new NetworkModeShortcut(appContext),
+                new RecentAppsShortcut(appContext),
+                new AppLauncherShortcut(appContext),
+                new RotationLockShortcut(appContext),
+                new SleepShortcut(appContext),
+                new MobileDataShortcut(appContext),
+                new WifiShortcut(appContext),
+                new BluetoothShortcut(appContext),
+                new WifiApShortcut(appContext),
+                new LocationModeShortcut(appContext),
+                new NfcShortcut(appContext),
+                new GoogleNowShortcut(appContext),
+                new VolumePanelShortcut(appContext),
+                new LauncherDrawerShortcut(appContext),
+                new BrightnessDialogShortcut(appContext),
+                new SmartRadioShortcut(appContext),
+                new QuietHoursShortcut(appContext),
+                new AirplaneModeShortcut(appContext),
+                new RingerModeShortcut(appContext),
+                new SyncShortcut(appContext)
+            };
+            sActionHandlers = new HashMap<String, AShortcut>(shortcuts.length);
+            for (AShortcut shortcut : shortcuts) {
+                sActionHandlers.put(shortcut.getAction(), shortcut);
+            }
+        }
+        return sActionHandlers.get(action);
+    }
+
     public static boolean isActionSafe(String action) {
         return (!UNSAFE_ACTIONS.contains(action));
     }
@@ -96,7 +141,7 @@ public class ShortcutActivity extends ListActivity {
             return;
         } else if (intent.getAction().equals(ACTION_LAUNCH_ACTION) &&
                 intent.hasExtra(EXTRA_ACTION)) {
-            launchAction(intent);
+            launchAction(mContext, intent);
             finish();
             return;
         } else {
@@ -105,64 +150,17 @@ public class ShortcutActivity extends ListActivity {
         }
     }
     
-    private void launchAction(Intent intent) {
+    /**
+     * Dispatches shortcut action to its handler.
+     * Returns false if there's no handler registered for the action.
+     */
+    public static boolean launchAction(Context context, Intent intent) {
         final String action = intent.getStringExtra(EXTRA_ACTION);
+        final AShortcut handler = action == null ? null : getActionHandler(context, action);
+        if (handler == null) return false;
 
-        if (action.equals(ShowPowerMenuShortcut.ACTION)) {
-            ShowPowerMenuShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ExpandNotificationsShortcut.ACTION)) {
-            ExpandNotificationsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ExpandQuicksettingsShortcut.ACTION)) {
-            ExpandQuicksettingsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ExpandedDesktopShortcut.ACTION)) {
-            ExpandedDesktopShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ScreenshotShortcut.ACTION)) {
-            ScreenshotShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ScreenrecordShortcut.ACTION)) {
-            ScreenrecordShortcut.launchAction(mContext, intent);
-        } else if (action.equals(TorchShortcut.ACTION)) {
-            TorchShortcut.launchAction(mContext, intent);
-        } else if (action.equals(NetworkModeShortcut.ACTION)) {
-            NetworkModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(RecentAppsShortcut.ACTION)) {
-            RecentAppsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(AppLauncherShortcut.ACTION)) {
-            AppLauncherShortcut.launchAction(mContext, intent);
-        } else if (action.equals(RotationLockShortcut.ACTION)) {
-            RotationLockShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SleepShortcut.ACTION)) {
-            SleepShortcut.launchAction(mContext, intent);
-        } else if (action.equals(MobileDataShortcut.ACTION)) {
-            MobileDataShortcut.launchAction(mContext, intent);
-        } else if (action.equals(WifiShortcut.ACTION)) {
-            WifiShortcut.launchAction(mContext, intent);
-        } else if (action.equals(BluetoothShortcut.ACTION)) {
-            BluetoothShortcut.launchAction(mContext, intent);
-        } else if (action.equals(WifiApShortcut.ACTION)) {
-            WifiApShortcut.launchAction(mContext, intent);
-        } else if (action.equals(LocationModeShortcut.ACTION)) {
-            LocationModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(NfcShortcut.ACTION)) {
-            NfcShortcut.launchAction(mContext, intent);
-        } else if (action.equals(GoogleNowShortcut.ACTION)) {
-            GoogleNowShortcut.launchAction(mContext, intent);
-        } else if (action.equals(VolumePanelShortcut.ACTION)) {
-            VolumePanelShortcut.launchAction(mContext, intent);
-        } else if (action.equals(LauncherDrawerShortcut.ACTION)) {
-            LauncherDrawerShortcut.launchAction(mContext, intent);
-        } else if (action.equals(BrightnessDialogShortcut.ACTION)) {
-            BrightnessDialogShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SmartRadioShortcut.ACTION)) {
-            SmartRadioShortcut.launchAction(mContext, intent);
-        } else if (action.equals(QuietHoursShortcut.ACTION)) {
-            QuietHoursShortcut.launchAction(mContext, intent);
-        } else if (action.equals(AirplaneModeShortcut.ACTION)) {
-            AirplaneModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(RingerModeShortcut.ACTION)) {
-            RingerModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SyncShortcut.ACTION)) {
-            SyncShortcut.launchAction(mContext, intent);
-        }
+        handler.launchAction(context, intent);
+        return true;
     }
 
     @Override
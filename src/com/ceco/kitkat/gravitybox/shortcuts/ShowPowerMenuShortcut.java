@@ -55,7 +55,8 @@ public class ShowPowerMenuShortcut extends AShortcut {
         return ShortcutIconResource.fromContext(mContext, R.drawable.shortcut_power_menu);
     }
 
-    public static void launchAction(Context context, Intent intent) {
+    @Override
+    protected void launchAction(Context context, Intent intent) {
         Intent launchIntent = new Intent(ACTION);
         context.sendBroadcast(launchIntent);
     }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.kitkat.gravitybox.webserviceclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Long-lived HTTP transport shared by all web service requests.
+ * Connections are kept alive and reused between requests. Requests are executed one at a time
+ * and identical request issued while the same one is still in flight doesn't hit the network again
+ * but receives response of the in-flight one.
+ */
+public class HttpTransport {
+    private static final int CONNECTION_TIMEOUT = 10000;
+    private static final int SOCKET_TIMEOUT = 30000;
+    private static final long IDLE_CONNECTION_TIMEOUT = 60000;
+
+    private static HttpTransport sInstance;
+
+    private DefaultHttpClient mHttpClient;
+    private ThreadSafeClientConnManager mConnManager;
+    private Map<String, InFlightRequest> mInFlight = new HashMap<String, InFlightRequest>();
+    private final Object mExecuteLock = new Object();
+
+    private static class InFlightRequest {
+        boolean done;
+        String response;
+        IOException error;
+    }
+
+    public static synchronized HttpTransport getInstance() {
+        if (sInstance == null) {
+            sInstance = new HttpTransport();
+        }
+        return sInstance;
+    }
+
+    private HttpTransport() {
+        HttpParams httpParams = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(httpParams, CONNECTION_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT);
+
+        // explicit port of request URL takes precedence over scheme default port
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+
+        mConnManager = new ThreadSafeClientConnManager(httpParams, registry);
+        mHttpClient = new DefaultHttpClient(mConnManager, httpParams);
+    }
+
+    /**
+     * Posts request params to request URL and returns response body.
+     * Blocks until response is available.
+     */
+    public String execute(RequestParams params) throws IOException {
+        final String key = params.getUrl() + "?" + params.getParams().toString();
+
+        InFlightRequest request;
+        boolean owner = false;
+        synchronized (mInFlight) {
+            request = mInFlight.get(key);
+            if (request == null) {
+                request = new InFlightRequest();
+                mInFlight.put(key, request);
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            return awaitResponse(request);
+        }
+
+        try {
+            request.response = post(params);
+        } catch (IOException e) {
+            request.error = e;
+        } catch (RuntimeException e) {
+            request.error = new IOException(e.getMessage(), e);
+        } finally {
+            synchronized (mInFlight) {
+                mInFlight.remove(key);
+                request.done = true;
+                mInFlight.notifyAll();
+            }
+        }
+
+        if (request.error != null) {
+            throw request.error;
+        }
+        return request.response;
+    }
+
+    private String awaitResponse(InFlightRequest request) throws IOException {
+        synchronized (mInFlight) {
+            while (!request.done) {
+                try {
+                    mInFlight.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+        if (request.error != null) {
+            throw request.error;
+        }
+        return request.response;
+    }
+
+    private String post(RequestParams params) throws IOException {
+        synchronized (mExecuteLock) {
+            mConnManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+
+            HttpPost httpPost = new HttpPost(params.getUrl());
+            httpPost.setEntity(new UrlEncodedFormEntity(params.getParams()));
+            HttpResponse httpResponse = mHttpClient.execute(httpPost);
+            HttpEntity httpEntity = httpResponse.getEntity();
+            // consuming the entity completely releases connection back to the pool
+            return EntityUtils.toString(httpEntity, HTTP.UTF_8);
+        }
+    }
+}
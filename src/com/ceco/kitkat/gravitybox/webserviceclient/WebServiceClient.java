@@ -18,26 +18,11 @@ package com.ceco.kitkat.gravitybox.webserviceclient;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.URL;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -55,8 +40,9 @@ import android.os.Build;
 import android.util.Log;
 
 public class WebServiceClient<T extends WebServiceResult> extends AsyncTask<RequestParams, Void, T> {
-    private static final int CONNECTION_TIMEOUT = 10000;
-    private static final int SOCKET_TIMEOUT = 30000;
+    // hash is computed once per installed APK and kept in memory
+    private static String sHash;
+    private static String sHashApkKey;
 
     private Context mContext;
     private WebServiceTaskListener<T> mListener;
@@ -113,23 +99,7 @@ public class WebServiceClient<T extends WebServiceResult> extends AsyncTask<Requ
             if (Build.SERIAL != null) {
                 params[0].addParam("serial", Build.SERIAL);
             }
-            HttpParams httpParams = new BasicHttpParams();
-            HttpConnectionParams.setConnectionTimeout(httpParams, CONNECTION_TIMEOUT);
-            HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT);
-
-            SchemeRegistry registry = new SchemeRegistry();
-            URL url = new URL(params[0].getUrl());
-            int port = url.getPort();
-            registry.register(new Scheme("http", new PlainSocketFactory(), (port == -1) ? 80 : port));
-
-            ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(httpParams, registry);
-            DefaultHttpClient httpClient = new DefaultHttpClient(cm, httpParams);
-
-            HttpPost httpPost = new HttpPost(params[0].getUrl());
-            httpPost.setEntity(new UrlEncodedFormEntity(params[0].getParams())); 
-            HttpResponse httpResponse = httpClient.execute(httpPost); 
-            HttpEntity httpEntity = httpResponse.getEntity(); 
-            String json = EntityUtils.toString(httpEntity, HTTP.UTF_8);
+            String json = HttpTransport.getInstance().execute(params[0]);
             result.setData(new JSONObject(json));
         } catch (UnsupportedEncodingException e) { 
             result.setStatus(ResultStatus.ERROR);
@@ -184,10 +154,16 @@ public class WebServiceClient<T extends WebServiceResult> extends AsyncTask<Requ
         }
     }
 
-    public static String getAppSignatureHash(Context context) {
+    public static synchronized String getAppSignatureHash(Context context) {
         try {
             File f = new File(context.getApplicationInfo().sourceDir);
             long apkLength = f.length();
+            // APK gets replaced on update so path, size and modification time identify installed version
+            final String apkKey = f.getAbsolutePath() + ":" + apkLength + ":" + f.lastModified();
+            if (sHash != null && apkKey.equals(sHashApkKey)) {
+                return sHash;
+            }
+
             byte[] apkLengthArray = String.valueOf(apkLength).getBytes();
 
             PackageManager pm = context.getPackageManager();
@@ -206,7 +182,9 @@ public class WebServiceClient<T extends WebServiceResult> extends AsyncTask<Requ
               sb.append(Integer.toHexString((array[i] & 0xFF) | 0x100).substring(1,3));
             }
             Log.d("GravityBox", sb.toString());
-            return sb.toString();
+            sHash = sb.toString();
+            sHashApkKey = apkKey;
+            return sHash;
         } catch (NameNotFoundException e) {
             e.printStackTrace();
             return null;